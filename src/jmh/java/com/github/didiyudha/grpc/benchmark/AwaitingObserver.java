@@ -0,0 +1,48 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Response observer that hands every message to a {@link Blackhole} and lets
+ * the benchmark thread wait for the stream to finish.
+ */
+final class AwaitingObserver<T> implements StreamObserver<T> {
+
+    private final Blackhole blackhole;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable error;
+
+    AwaitingObserver(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void onNext(T value) {
+        blackhole.consume(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        error = t;
+        done.countDown();
+    }
+
+    @Override
+    public void onCompleted() {
+        done.countDown();
+    }
+
+    void await() throws Exception {
+        if (!done.await(30, TimeUnit.SECONDS)) {
+            throw new TimeoutException("Stream did not complete");
+        }
+        if (error != null) {
+            throw new IllegalStateException("Stream failed", error);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.proto.calculator.*;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per CalculatorService call shape. Throughput is reported in
+ * ops/ms and SampleTime gives the latency percentiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CalculatorServiceBenchmark extends TransportBenchmark {
+
+    // 2^32 - 5 times 2^32 - 17: the slowest input for Pollard-Rho
+    private static final long SEMIPRIME = 4294967291L * 4294967279L;
+
+    @Param({"100"})
+    public int streamSize;
+
+    private CalculatorServiceGrpc.CalculatorServiceBlockingStub blockingStub;
+    private CalculatorServiceGrpc.CalculatorServiceStub asyncStub;
+
+    private final CalculatorRequest addRequest = CalculatorRequest.newBuilder()
+            .setFirstNumber(3)
+            .setSecondNumber(10)
+            .build();
+
+    private final PrimeNumberDecompositionRequest smallDecompositionRequest =
+            PrimeNumberDecompositionRequest.newBuilder()
+                    .setN(120)
+                    .build();
+
+    private final PrimeNumberDecompositionRequest semiprimeDecompositionRequest =
+            PrimeNumberDecompositionRequest.newBuilder()
+                    .setN(SEMIPRIME)
+                    .build();
+
+    private AverageRequest[] averageRequests;
+    private RunningStatisticsRequest[] runningStatisticsRequests;
+    private FindMaxRequest[] findMaxRequests;
+    private AverageBatchRequest averageBatchRequest;
+    private FindMaxBatchRequest findMaxBatchRequest;
+    private OrderStatisticsRequest[] orderStatisticsRequests;
+    private OrderStatisticsRequest[] orderStatisticsChangesOnlyRequests;
+
+    @Override
+    protected void createStubs() {
+        blockingStub = CalculatorServiceGrpc.newBlockingStub(channel);
+        asyncStub = CalculatorServiceGrpc.newStub(channel);
+
+        averageRequests = new AverageRequest[streamSize];
+        runningStatisticsRequests = new RunningStatisticsRequest[streamSize];
+        findMaxRequests = new FindMaxRequest[streamSize];
+        for (int i = 0; i < streamSize; i++) {
+            averageRequests[i] = AverageRequest.newBuilder().setNumber(i).build();
+            runningStatisticsRequests[i] = RunningStatisticsRequest.newBuilder().setNumber(i).build();
+            findMaxRequests[i] = FindMaxRequest.newBuilder().setN(i).build();
+        }
+
+        // The same numbers packed into a single message
+        AverageBatchRequest.Builder averageBatch = AverageBatchRequest.newBuilder();
+        FindMaxBatchRequest.Builder findMaxBatch = FindMaxBatchRequest.newBuilder();
+        for (int i = 0; i < streamSize; i++) {
+            averageBatch.addNumbers(i);
+            findMaxBatch.addNumbers(i);
+        }
+        averageBatchRequest = averageBatch.build();
+        findMaxBatchRequest = findMaxBatch.build();
+
+        // Random values, so the maximum rarely moves after the first few
+        Random random = new Random(42);
+        orderStatisticsRequests = new OrderStatisticsRequest[streamSize];
+        orderStatisticsChangesOnlyRequests = new OrderStatisticsRequest[streamSize];
+        OrderStatisticsOptions.Builder options = OrderStatisticsOptions.newBuilder()
+                .setTopK(10)
+                .addQuantiles(0.5)
+                .addQuantiles(0.99);
+        for (int i = 0; i < streamSize; i++) {
+            OrderStatisticsRequest request = OrderStatisticsRequest.newBuilder()
+                    .addNumbers(random.nextInt(1_000_000))
+                    .build();
+            orderStatisticsRequests[i] = request;
+            orderStatisticsChangesOnlyRequests[i] = request;
+        }
+        orderStatisticsRequests[0] = orderStatisticsRequests[0].toBuilder()
+                .setOptions(options)
+                .build();
+        orderStatisticsChangesOnlyRequests[0] = orderStatisticsChangesOnlyRequests[0].toBuilder()
+                .setOptions(options.setChangesOnly(true))
+                .build();
+
+        // Tumbling windows of ten values: one partial result per ten requests
+        runningStatisticsRequests[0] = runningStatisticsRequests[0].toBuilder()
+                .setWindow(StatisticsWindow.newBuilder()
+                        .setType(StatisticsWindow.Type.TUMBLING)
+                        .setSize(10))
+                .build();
+    }
+
+    @Benchmark
+    public CalculatorResponse add() {
+        return blockingStub.add(addRequest);
+    }
+
+    @Benchmark
+    public void primeNumberDecomposition(Blackhole blackhole) {
+        drain(blockingStub.primeNumberDecomposition(smallDecompositionRequest), blackhole);
+    }
+
+    @Benchmark
+    public void primeNumberDecompositionSemiprime(Blackhole blackhole) {
+        drain(blockingStub.primeNumberDecomposition(semiprimeDecompositionRequest), blackhole);
+    }
+
+    @Benchmark
+    public void average(Blackhole blackhole) throws Exception {
+        AwaitingObserver<AverageResultResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<AverageRequest> requests = asyncStub.average(responses);
+        for (AverageRequest request : averageRequests) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void averageBatch(Blackhole blackhole) throws Exception {
+        AwaitingObserver<AverageResultResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<AverageBatchRequest> requests = asyncStub.averageBatch(responses);
+        requests.onNext(averageBatchRequest);
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void runningStatistics(Blackhole blackhole) throws Exception {
+        AwaitingObserver<RunningStatisticsResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<RunningStatisticsRequest> requests = asyncStub.runningStatistics(responses);
+        for (RunningStatisticsRequest request : runningStatisticsRequests) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void findMax(Blackhole blackhole) throws Exception {
+        AwaitingObserver<FindMaxResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<FindMaxRequest> requests = asyncStub.findMax(responses);
+        for (FindMaxRequest request : findMaxRequests) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void findMaxBatch(Blackhole blackhole) throws Exception {
+        AwaitingObserver<FindMaxBatchResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<FindMaxBatchRequest> requests = asyncStub.findMaxBatch(responses);
+        requests.onNext(findMaxBatchRequest);
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void orderStatistics(Blackhole blackhole) throws Exception {
+        orderStatistics(orderStatisticsRequests, blackhole);
+    }
+
+    @Benchmark
+    public void orderStatisticsChangesOnly(Blackhole blackhole) throws Exception {
+        orderStatistics(orderStatisticsChangesOnlyRequests, blackhole);
+    }
+
+    private void orderStatistics(OrderStatisticsRequest[] stream, Blackhole blackhole) throws Exception {
+        AwaitingObserver<OrderStatisticsResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<OrderStatisticsRequest> requests = asyncStub.orderStatistics(responses);
+        for (OrderStatisticsRequest request : stream) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public PrimeNumberDecompositionBatchResponse primeNumberDecompositionBatch() {
+        return blockingStub.primeNumberDecompositionBatch(smallDecompositionRequest);
+    }
+
+    private static <T> void drain(Iterator<T> responses, Blackhole blackhole) {
+        while (responses.hasNext()) {
+            blackhole.consume(responses.next());
+        }
+    }
+}
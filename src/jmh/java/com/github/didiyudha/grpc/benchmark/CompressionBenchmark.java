@@ -0,0 +1,114 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import com.proto.calculator.CalculatorRequest;
+import com.proto.greet.GreetManyTimesResponse;
+import com.proto.greet.LongGreetResponse;
+import io.grpc.Codec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of each message encoding per RPC message shape, measured the way
+ * gRPC frames a message: a fresh compressor stream per message. The setup
+ * prints the bytes on the wire for every combination, so the time per
+ * message can be weighed against the bytes it saves.
+ *
+ * gRPC compresses each message on its own, so a stream of short messages
+ * such as GreetManyTimes gains nothing even though the stream as a whole is
+ * repetitive text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompressionBenchmark {
+
+    @Param({"add", "greetManyTimes", "longGreetChunk", "longGreet"})
+    public String shape;
+
+    @Param({"identity", "gzip", "lz4"})
+    public String encoding;
+
+    private MessageLite message;
+    private Codec codec;
+    private byte[] compressed;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+    private final byte[] readBuffer = new byte[8192];
+
+    @Setup
+    public void prepare() throws IOException {
+        switch (shape) {
+            case "add":
+                message = CalculatorRequest.newBuilder()
+                        .setFirstNumber(3)
+                        .setSecondNumber(10)
+                        .build();
+                break;
+            case "greetManyTimes":
+                message = GreetManyTimesResponse.newBuilder()
+                        .setResult("Hello Didi, response number: 7")
+                        .build();
+                break;
+            case "longGreetChunk":
+                // One LongGreetChunked message
+                message = longGreetResponse(16 * 1024);
+                break;
+            case "longGreet":
+                message = longGreetResponse(256 * 1024);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        codec = (Codec) CompressionPolicy.compressorRegistry().lookupCompressor(encoding);
+        compressed = compress();
+        System.out.println();
+        System.out.println(shape + " " + encoding + ": " + message.getSerializedSize()
+                + " -> " + compressed.length + " bytes");
+    }
+
+    private static LongGreetResponse longGreetResponse(int size) {
+        ByteString greeting = ByteString.copyFromUtf8("Hello Didi! ");
+        ByteString result = ByteString.EMPTY;
+        while (result.size() + greeting.size() <= size) {
+            result = result.concat(greeting);
+        }
+        return LongGreetResponse.newBuilder()
+                .setResultBytes(result)
+                .build();
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        out.reset();
+        try (OutputStream stream = codec.compress(out)) {
+            message.writeTo(stream);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        long read = 0;
+        try (InputStream stream = codec.decompress(new ByteArrayInputStream(compressed))) {
+            for (int n; (n = stream.read(readBuffer)) != -1; ) {
+                read += n;
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.github.didiyudha.grpc.greeting.server.GreetServiceImpl;
+import com.proto.greet.*;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the GreetService call shapes that do not wait on a timer:
+ * unary Greet, client-streaming LongGreet and bidirectional GreetEveryone.
+ * Reporting follows {@link CalculatorServiceBenchmark}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GreetServiceBenchmark extends TransportBenchmark {
+
+    @Param({"100"})
+    public int streamSize;
+
+    /** Serve Greet and GreetEveryone through the pre-encoded response marshaller. */
+    @Param({"false", "true"})
+    public boolean preEncoded;
+
+    private GreetServiceGrpc.GreetServiceBlockingStub blockingStub;
+    private GreetServiceGrpc.GreetServiceStub asyncStub;
+
+    private final Greeting greeting = Greeting.newBuilder()
+            .setFirstName("Didi")
+            .setLastName("Yudha")
+            .build();
+
+    private final GreetRequest greetRequest = GreetRequest.newBuilder()
+            .setGreeting(greeting)
+            .build();
+
+    private final LongGreetRequest longGreetRequest = LongGreetRequest.newBuilder()
+            .setGreeting(greeting)
+            .build();
+
+    private final GreetEveryoneRequest greetEveryoneRequest = GreetEveryoneRequest.newBuilder()
+            .setGreeting(greeting)
+            .build();
+
+    @Override
+    protected ServerServiceDefinition greetService() {
+        GreetServiceImpl service = new GreetServiceImpl();
+        return preEncoded ? service.bindPreEncodedService() : service.bindService();
+    }
+
+    @Override
+    protected void createStubs() {
+        blockingStub = GreetServiceGrpc.newBlockingStub(channel);
+        asyncStub = GreetServiceGrpc.newStub(channel);
+    }
+
+    @Benchmark
+    public GreetResponse greet() {
+        return blockingStub.greet(greetRequest);
+    }
+
+    @Benchmark
+    public void longGreet(Blackhole blackhole) throws Exception {
+        AwaitingObserver<LongGreetResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<LongGreetRequest> requests = asyncStub.longGreet(responses);
+        for (int i = 0; i < streamSize; i++) {
+            requests.onNext(longGreetRequest);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+
+    @Benchmark
+    public void greetEveryone(Blackhole blackhole) throws Exception {
+        AwaitingObserver<GreetEveryoneResponse> responses = new AwaitingObserver<>(blackhole);
+        StreamObserver<GreetEveryoneRequest> requests = asyncStub.greetEveryone(responses);
+        for (int i = 0; i < streamSize; i++) {
+            requests.onNext(greetEveryoneRequest);
+        }
+        requests.onCompleted();
+        responses.await();
+    }
+}
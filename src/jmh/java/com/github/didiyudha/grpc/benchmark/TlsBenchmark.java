@@ -0,0 +1,211 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.github.didiyudha.grpc.server.ReloadingSslContext;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.grpc.netty.shaded.io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handshake and bulk cost of each TLS provider, with the server context
+ * GreetingServer builds for OpenSSL. Client and server engines talk through memory, so
+ * only TLS CPU is measured:
+ *
+ * <ul>
+ * <li>{@code fullHandshake}: a new client, as in a reconnect storm after a restart</li>
+ * <li>{@code resumedHandshake}: a client reconnecting with the session of an earlier connection</li>
+ * <li>{@code transfer}: encrypting and decrypting 16 KiB of application data on an open connection</li>
+ * </ul>
+ *
+ * Certificates are generated with {@code ssl/generate-certificates.sh}, so
+ * openssl must be on the path. Run from the project directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TlsBenchmark {
+
+    private static final int RECORD_SIZE = 16 * 1024;
+
+    @Param({"openssl", "jdk"})
+    public String serverProvider;
+
+    @Param({"openssl", "jdk"})
+    public String clientProvider;
+
+    @Param({"ec", "rsa"})
+    public String keyType;
+
+    private File certificates;
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private int nextPort;
+
+    private final ByteBuffer clientToServer = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer serverToClient = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer received = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer empty = ByteBuffer.allocate(0);
+    private final ByteBuffer payload = ByteBuffer.allocate(RECORD_SIZE);
+
+    private SSLEngine openClient;
+    private SSLEngine openServer;
+
+    @Setup
+    public void prepare() throws IOException, InterruptedException {
+        certificates = Files.createTempDirectory("tls-benchmark").toFile();
+        Process generate = new ProcessBuilder("bash", "ssl/generate-certificates.sh", certificates.getPath(), keyType)
+                .inheritIO()
+                .start();
+        if (generate.waitFor() != 0) {
+            throw new IOException("ssl/generate-certificates.sh failed");
+        }
+
+        File certChain = new File(certificates, "server.crt");
+        File privateKey = new File(certificates, "server.pem");
+        if ("openssl".equals(serverProvider)) {
+            serverContext = ReloadingSslContext.newBuilder(certChain, privateKey)
+                    .sessionCacheSize(1024)
+                    .sessionTimeout(1, TimeUnit.HOURS)
+                    .build();
+        } else {
+            // gRPC 1.12 only negotiates ALPN on the JDK provider through Jetty ALPN, which is not needed to measure TLS
+            serverContext = SslContextBuilder.forServer(certChain, privateKey)
+                    .sslProvider(SslProvider.JDK)
+                    .ciphers(ReloadingSslContext.preferredCiphers(), SupportedCipherSuiteFilter.INSTANCE)
+                    .sessionCacheSize(1024)
+                    .sessionTimeout(3600)
+                    .build();
+        }
+        clientContext = SslContextBuilder.forClient()
+                .sslProvider(SslProvider.valueOf(clientProvider.toUpperCase()))
+                .trustManager(new File(certificates, "ca.crt"))
+                .build();
+
+        // Establishes the session resumedHandshake reuses, and the connection transfer uses
+        openClient = clientContext.newEngine(ByteBufAllocator.DEFAULT, "localhost", 50051);
+        openServer = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        handshake(openClient, openServer);
+        System.out.println();
+        System.out.println(serverProvider + " server, " + clientProvider + " client, " + keyType + ": "
+                + openClient.getSession().getProtocol() + " " + openClient.getSession().getCipherSuite());
+    }
+
+    @TearDown
+    public void cleanUp() {
+        ReferenceCountUtil.release(openClient);
+        ReferenceCountUtil.release(openServer);
+        if (serverContext instanceof ReloadingSslContext) {
+            ((ReloadingSslContext) serverContext).close();
+        }
+        for (File file : certificates.listFiles()) {
+            file.delete();
+        }
+        certificates.delete();
+    }
+
+    @Benchmark
+    public String fullHandshake() throws SSLException {
+        // A port the client has no session for
+        return connect(clientContext.newEngine(ByteBufAllocator.DEFAULT, "localhost", 1024 + nextPort++ % 60000));
+    }
+
+    @Benchmark
+    public String resumedHandshake() throws SSLException {
+        return connect(clientContext.newEngine(ByteBufAllocator.DEFAULT, "localhost", 50051));
+    }
+
+    private String connect(SSLEngine client) throws SSLException {
+        SSLEngine server = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        try {
+            handshake(client, server);
+            return client.getSession().getCipherSuite();
+        } finally {
+            ReferenceCountUtil.release(client);
+            ReferenceCountUtil.release(server);
+        }
+    }
+
+    @Benchmark
+    public int transfer() throws SSLException {
+        payload.clear();
+        clientToServer.clear();
+        openClient.wrap(payload, clientToServer);
+        clientToServer.flip();
+        received.clear();
+        while (clientToServer.hasRemaining()) {
+            openServer.unwrap(clientToServer, received);
+        }
+        return received.position();
+    }
+
+    private void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+        clientToServer.clear();
+        serverToClient.clear();
+        client.setUseClientMode(true);
+        server.setUseClientMode(false);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int steps = 0; handshaking(client) || handshaking(server); steps++) {
+            if (steps > 100) {
+                throw new SSLException("Handshake did not finish: " + client.getHandshakeStatus()
+                        + " / " + server.getHandshakeStatus());
+            }
+            step(client, serverToClient, clientToServer);
+            step(server, clientToServer, serverToClient);
+        }
+        // TLS 1.3 servers send the session ticket after the handshake
+        if (serverToClient.position() > 0) {
+            serverToClient.flip();
+            received.clear();
+            client.unwrap(serverToClient, received);
+            serverToClient.compact();
+        }
+    }
+
+    private static boolean handshaking(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private void step(SSLEngine engine, ByteBuffer in, ByteBuffer out) throws SSLException {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+                engine.wrap(empty, out);
+                break;
+            case NEED_UNWRAP:
+                in.flip();
+                received.clear();
+                engine.unwrap(in, received);
+                in.compact();
+                break;
+            case NEED_TASK:
+                for (Runnable task; (task = engine.getDelegatedTask()) != null; ) {
+                    task.run();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
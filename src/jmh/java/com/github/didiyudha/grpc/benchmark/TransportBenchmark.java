@@ -0,0 +1,93 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.metrics.ServerPhaseTracer;
+import com.github.didiyudha.grpc.calculator.server.CalculatorServiceImpl;
+import com.github.didiyudha.grpc.greeting.server.GreetServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts {@link CalculatorServiceImpl} and {@link GreetServiceImpl} on the
+ * selected transport and opens a channel to them: {@code inprocess} with the
+ * default executors, {@code colocated} as in co-location mode with no thread
+ * hops, or {@code netty} over loopback. Subclasses add the benchmark methods.
+ */
+@State(Scope.Benchmark)
+public abstract class TransportBenchmark {
+
+    @Param({"inprocess", "colocated", "netty"})
+    public String transport;
+
+    /** Whether the server traces call phases, to measure what that costs. */
+    @Param({"false"})
+    public boolean tracing;
+
+    protected Server server;
+    protected ManagedChannel channel;
+
+    @Setup
+    public void startServer() throws IOException {
+        ServerBuilder<?> builder;
+        String name = "benchmark-" + System.nanoTime();
+        if ("inprocess".equals(transport)) {
+            builder = InProcessServerBuilder.forName(name);
+            channel = InProcessChannelBuilder.forName(name).build();
+        } else if ("colocated".equals(transport)) {
+            // Co-location mode: the pool's in-process channel and a server that runs handlers on the caller's thread
+            builder = InProcessServerBuilder.forName(name).directExecutor();
+            channel = ChannelPool.newBuilder("inprocess:" + name).build();
+        } else if ("netty".equals(transport)) {
+            builder = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0));
+        } else {
+            throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+        if (tracing) {
+            ServerPhaseTracer tracer = new ServerPhaseTracer(new MetricsRegistry(), 0);
+            builder.addStreamTracerFactory(tracer)
+                    .intercept(tracer);
+        }
+        server = builder.addService(calculatorService())
+                .addService(greetService())
+                .build()
+                .start();
+        if (channel == null) {
+            channel = NettyChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .build();
+        }
+        createStubs();
+    }
+
+    protected abstract void createStubs();
+
+    protected CalculatorServiceImpl calculatorService() {
+        return new CalculatorServiceImpl();
+    }
+
+    protected ServerServiceDefinition greetService() {
+        return new GreetServiceImpl().bindService();
+    }
+
+    @TearDown
+    public void stopServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
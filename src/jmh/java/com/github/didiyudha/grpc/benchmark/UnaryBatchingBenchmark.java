@@ -0,0 +1,154 @@
+package com.github.didiyudha.grpc.benchmark;
+
+import com.github.didiyudha.grpc.calculator.server.CalculatorResultCache;
+import com.github.didiyudha.grpc.calculator.server.CalculatorServiceImpl;
+import com.github.didiyudha.grpc.calculator.server.UnaryBatcher;
+import com.proto.calculator.BatchAddRequest;
+import com.proto.calculator.BatchAddResponse;
+import com.proto.calculator.BatchSquareRootRequest;
+import com.proto.calculator.BatchSquareRootResponse;
+import com.proto.calculator.CalculatorRequest;
+import com.proto.calculator.CalculatorResponse;
+import com.proto.calculator.CalculatorServiceGrpc;
+import com.proto.calculator.SquareRootRequest;
+import com.proto.calculator.SquareRootResponse;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Many tiny Add and SquareRoot operations at once, three ways: {@code calls}
+ * concurrent unary calls answered one by one ({@code lingerMicros=0}) or
+ * micro-batched on the server, and one explicit BatchAdd or BatchSquareRoot
+ * call carrying all of them. One operation is a round of {@code calls}
+ * operations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UnaryBatchingBenchmark extends TransportBenchmark {
+
+    @Param({"64"})
+    public int calls;
+
+    /** Server-side linger of the micro-batcher; 0 answers every call on its own. */
+    @Param({"0", "100"})
+    public long lingerMicros;
+
+    private UnaryBatcher batcher;
+    private CalculatorServiceGrpc.CalculatorServiceStub asyncStub;
+    private CalculatorServiceGrpc.CalculatorServiceBlockingStub blockingStub;
+    private CalculatorRequest[] addRequests;
+    private SquareRootRequest[] squareRootRequests;
+    private BatchAddRequest batchAddRequest;
+    private BatchSquareRootRequest batchSquareRootRequest;
+
+    @Override
+    protected CalculatorServiceImpl calculatorService() {
+        batcher = lingerMicros > 0 ? new UnaryBatcher(calls, lingerMicros, ForkJoinPool.commonPool()) : null;
+        return new CalculatorServiceImpl(CalculatorResultCache.disabled(), null, batcher);
+    }
+
+    @Override
+    protected void createStubs() {
+        asyncStub = CalculatorServiceGrpc.newStub(channel);
+        blockingStub = CalculatorServiceGrpc.newBlockingStub(channel);
+
+        addRequests = new CalculatorRequest[calls];
+        squareRootRequests = new SquareRootRequest[calls];
+        BatchAddRequest.Builder batchAdd = BatchAddRequest.newBuilder();
+        BatchSquareRootRequest.Builder batchSquareRoot = BatchSquareRootRequest.newBuilder();
+        for (int i = 0; i < calls; i++) {
+            addRequests[i] = CalculatorRequest.newBuilder().setFirstNumber(i).setSecondNumber(10).build();
+            squareRootRequests[i] = SquareRootRequest.newBuilder().setNumber(i + 1).build();
+            batchAdd.addFirstNumbers(i).addSecondNumbers(10);
+            batchSquareRoot.addNumbers(i + 1);
+        }
+        batchAddRequest = batchAdd.build();
+        batchSquareRootRequest = batchSquareRoot.build();
+    }
+
+    @TearDown
+    public void stopBatcher() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void add(Blackhole blackhole) throws Exception {
+        Round<CalculatorResponse> round = new Round<>(calls, blackhole);
+        for (CalculatorRequest request : addRequests) {
+            asyncStub.add(request, round);
+        }
+        round.await();
+    }
+
+    @Benchmark
+    public void squareRoot(Blackhole blackhole) throws Exception {
+        Round<SquareRootResponse> round = new Round<>(calls, blackhole);
+        for (SquareRootRequest request : squareRootRequests) {
+            asyncStub.squareRoot(request, round);
+        }
+        round.await();
+    }
+
+    @Benchmark
+    public BatchAddResponse batchAdd() {
+        return blockingStub.batchAdd(batchAddRequest);
+    }
+
+    @Benchmark
+    public BatchSquareRootResponse batchSquareRoot() {
+        return blockingStub.batchSquareRoot(batchSquareRootRequest);
+    }
+
+    /**
+     * Waits for a round of unary calls that share one observer.
+     */
+    private static final class Round<T> implements StreamObserver<T> {
+
+        private final Blackhole blackhole;
+        private final CountDownLatch done;
+        private volatile Throwable error;
+
+        Round(int calls, Blackhole blackhole) {
+            this.blackhole = blackhole;
+            this.done = new CountDownLatch(calls);
+        }
+
+        @Override
+        public void onNext(T value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        void await() throws Exception {
+            if (!done.await(30, TimeUnit.SECONDS)) {
+                throw new TimeoutException("Calls did not complete");
+            }
+            if (error != null) {
+                throw new IllegalStateException("Call failed", error);
+            }
+        }
+    }
+}
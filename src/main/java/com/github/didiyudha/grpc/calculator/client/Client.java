@@ -1,8 +1,9 @@
 package com.github.didiyudha.grpc.calculator.client;
 
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.client.HedgingInterceptor;
 import com.proto.calculator.*;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.stub.StreamObserver;
 
 import java.util.Arrays;
@@ -13,17 +14,30 @@ import java.util.concurrent.TimeUnit;
 public class Client {
 
     public void run() throws InterruptedException {
-        ManagedChannel channel = ManagedChannelBuilder
-                .forAddress("localhost", 50055)
-                .usePlaintext()
+        // -Dcalculator.target=host:port,host:port or file:path spreads calls over several servers
+        ManagedChannel channel = ChannelPool
+                .newBuilder(System.getProperty("calculator.target", "localhost:50055"))
+                .connectionsPerTarget(Integer.getInteger("calculator.connections", 1))
+                .policy(ChannelPool.Policy.LEAST_OUTSTANDING)
+                .keepAliveTime(30, TimeUnit.SECONDS)
+                .idleTimeout(5, TimeUnit.MINUTES)
+                .build();
+
+        // Add and SquareRoot are idempotent, so slow or UNAVAILABLE calls are sent again
+        HedgingInterceptor hedging = HedgingInterceptor.newBuilder()
+                .forMethods(CalculatorServiceGrpc.getAddMethod(), CalculatorServiceGrpc.getSquareRootMethod())
+                .maxAttempts(3)
+                .hedgingDelay(20, TimeUnit.MILLISECONDS)
+                .hedgingPercentile(95)
                 .build();
         CalculatorServiceGrpc.CalculatorServiceBlockingStub client =
-                CalculatorServiceGrpc.newBlockingStub(channel);
+                CalculatorServiceGrpc.newBlockingStub(channel).withInterceptors(hedging);
 
 
         // doUnaryCall(client);
         // doServerStreamingCall(client);
         // doClientStreamingCall(channel);
+        // doBatchedClientStreamingCall(channel);
         // doBidirectionalStreamingCall(channel);
         doErrorCall(channel);
 
@@ -89,6 +103,38 @@ public class Client {
         latch.await(5, TimeUnit.SECONDS);
     }
 
+    private void doBatchedClientStreamingCall(ManagedChannel channel) throws InterruptedException {
+        CalculatorServiceGrpc.CalculatorServiceStub asyncClient = CalculatorServiceGrpc.newStub(channel);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        StreamObserver<AverageBatchRequest> requestStreamObserver = asyncClient.averageBatch(new StreamObserver<AverageResultResponse>() {
+            @Override
+            public void onNext(AverageResultResponse value) {
+                System.out.println("Average: "+ value.getResult());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                latch.countDown();
+            }
+        });
+
+        // Same 5000 numbers as doClientStreamingCall, sent as 5 messages of 1000
+        NumberBatcher<AverageBatchRequest> batcher =
+                NumberBatcher.forAverage(requestStreamObserver, 1000, 0, null);
+        for (int i = 1; i <= 5000; i++) {
+            batcher.add(i);
+        }
+
+        batcher.onCompleted();
+        latch.await(5, TimeUnit.SECONDS);
+    }
+
     private void doBidirectionalStreamingCall(ManagedChannel channel) {
 
         CalculatorServiceGrpc.CalculatorServiceStub asyncClient =
@@ -0,0 +1,125 @@
+package com.github.didiyudha.grpc.calculator.client;
+
+import com.proto.calculator.AverageBatchRequest;
+import com.proto.calculator.FindMaxBatchRequest;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs numbers into batch messages for the *Batch streaming RPCs. A batch is
+ * sent when it reaches {@code maxBatchSize} numbers or, if a linger time is
+ * set, when its first number has waited that long, whichever comes first.
+ *
+ * Calls may come from any thread; they are serialized on this instance so the
+ * underlying request observer is never used concurrently.
+ */
+public final class NumberBatcher<B> {
+
+    public interface BatchFactory<B> {
+        B create(long[] numbers, int count);
+    }
+
+    private final StreamObserver<B> requests;
+    private final BatchFactory<B> factory;
+    private final long[] buffer;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private int count;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed;
+
+    /**
+     * @param lingerNanos 0 to only send full batches (and on flush or completion)
+     * @param scheduler   runs linger flushes; may be null when {@code lingerNanos} is 0
+     */
+    public NumberBatcher(StreamObserver<B> requests, BatchFactory<B> factory, int maxBatchSize,
+                         long lingerNanos, ScheduledExecutorService scheduler) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (lingerNanos > 0 && scheduler == null) {
+            throw new IllegalArgumentException("A scheduler is required when lingering");
+        }
+        this.requests = requests;
+        this.factory = factory;
+        this.buffer = new long[maxBatchSize];
+        this.lingerNanos = lingerNanos;
+        this.scheduler = scheduler;
+    }
+
+    public static NumberBatcher<AverageBatchRequest> forAverage(StreamObserver<AverageBatchRequest> requests,
+                                                                int maxBatchSize, long lingerNanos,
+                                                                ScheduledExecutorService scheduler) {
+        return new NumberBatcher<>(requests, (numbers, count) -> {
+            AverageBatchRequest.Builder batch = AverageBatchRequest.newBuilder();
+            for (int i = 0; i < count; i++) {
+                batch.addNumbers(numbers[i]);
+            }
+            return batch.build();
+        }, maxBatchSize, lingerNanos, scheduler);
+    }
+
+    public static NumberBatcher<FindMaxBatchRequest> forFindMax(StreamObserver<FindMaxBatchRequest> requests,
+                                                                int maxBatchSize, long lingerNanos,
+                                                                ScheduledExecutorService scheduler) {
+        return new NumberBatcher<>(requests, (numbers, count) -> {
+            FindMaxBatchRequest.Builder batch = FindMaxBatchRequest.newBuilder();
+            for (int i = 0; i < count; i++) {
+                batch.addNumbers(numbers[i]);
+            }
+            return batch.build();
+        }, maxBatchSize, lingerNanos, scheduler);
+    }
+
+    public synchronized void add(long number) {
+        if (closed) {
+            throw new IllegalStateException("Batcher already completed");
+        }
+        buffer[count++] = number;
+        if (count == buffer.length) {
+            flush();
+        } else if (count == 1 && lingerNanos > 0) {
+            lingerTask = scheduler.schedule(this::flush, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sends the pending numbers, if any, as a batch now.
+     */
+    public synchronized void flush() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        if (count == 0 || closed) {
+            return;
+        }
+        requests.onNext(factory.create(buffer, count));
+        count = 0;
+    }
+
+    /**
+     * Sends the pending numbers and completes the request stream.
+     */
+    public synchronized void onCompleted() {
+        flush();
+        closed = true;
+        requests.onCompleted();
+    }
+
+    /**
+     * Drops the pending numbers and fails the request stream.
+     */
+    public synchronized void onError(Throwable t) {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+        }
+        count = 0;
+        closed = true;
+        requests.onError(t);
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.server.ServerConfig;
+
+/**
+ * Optional, bounded memoization of the pure calculator RPCs.
+ *
+ * Each cache is a Caffeine cache, which evicts with W-TinyLFU: a small LRU
+ * admission window in front of a segmented LRU main space, guarded by a
+ * frequency sketch so one-off inputs cannot push out hot ones. Lookups go
+ * through {@link Cache#get}, so concurrent requests for the same missing key
+ * wait for a single computation instead of each doing the work.
+ *
+ * A cache with a bound of 0 is disabled and its method computes directly.
+ */
+public final class CalculatorResultCache {
+
+    private final Cache<AddKey, Long> addResults;
+    private final Cache<Integer, Double> squareRootResults;
+    private final Cache<Long, long[]> factorizations;
+
+    /**
+     * @param addMaxEntries          entries kept for Add
+     * @param squareRootMaxEntries   entries kept for SquareRoot
+     * @param factorizationMaxWeight total weight kept for PrimeNumberDecomposition,
+     *                               where an entry weighs one plus its number of factors
+     */
+    public CalculatorResultCache(long addMaxEntries, long squareRootMaxEntries, long factorizationMaxWeight) {
+        this.addResults = addMaxEntries > 0
+                ? Caffeine.newBuilder().maximumSize(addMaxEntries).recordStats().<AddKey, Long>build()
+                : null;
+        this.squareRootResults = squareRootMaxEntries > 0
+                ? Caffeine.newBuilder().maximumSize(squareRootMaxEntries).recordStats().<Integer, Double>build()
+                : null;
+        this.factorizations = factorizationMaxWeight > 0
+                ? Caffeine.newBuilder()
+                        .maximumWeight(factorizationMaxWeight)
+                        .weigher((Long n, long[] factors) -> 1 + factors.length)
+                        .recordStats()
+                        .<Long, long[]>build()
+                : null;
+    }
+
+    /**
+     * Reads {@code cache.add.maxEntries}, {@code cache.squareRoot.maxEntries} and
+     * {@code cache.primeNumberDecomposition.maxWeight}; all default to 0 (disabled).
+     */
+    public static CalculatorResultCache fromConfig(ServerConfig config) {
+        return new CalculatorResultCache(
+                config.getLong("cache.add.maxEntries", 0),
+                config.getLong("cache.squareRoot.maxEntries", 0),
+                config.getLong("cache.primeNumberDecomposition.maxWeight", 0));
+    }
+
+    public static CalculatorResultCache disabled() {
+        return new CalculatorResultCache(0, 0, 0);
+    }
+
+    long add(long firstNumber, long secondNumber) {
+        if (addResults == null) {
+            return firstNumber + secondNumber;
+        }
+        return addResults.get(new AddKey(firstNumber, secondNumber), key -> key.first + key.second);
+    }
+
+    double squareRoot(int number) {
+        if (squareRootResults == null) {
+            return Math.sqrt(number);
+        }
+        return squareRootResults.get(number, Math::sqrt);
+    }
+
+    /**
+     * The returned array may be shared with other callers and must not be modified.
+     */
+    long[] factor(long n) {
+        if (factorizations == null) {
+            return PrimeFactorizer.factor(n);
+        }
+        return factorizations.get(n, PrimeFactorizer::factor);
+    }
+
+    /**
+     * Exposes hit, miss and eviction counts and the size of every enabled cache.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        register(registry, "add", addResults);
+        register(registry, "squareRoot", squareRootResults);
+        register(registry, "primeNumberDecomposition", factorizations);
+    }
+
+    private static void register(MetricsRegistry registry, String name, Cache<?, ?> cache) {
+        if (cache == null) {
+            return;
+        }
+        String labels = "cache=\"" + name + "\"";
+        registry.registerCounter("calculator_cache_hits_total", labels, () -> cache.stats().hitCount());
+        registry.registerCounter("calculator_cache_misses_total", labels, () -> cache.stats().missCount());
+        registry.registerCounter("calculator_cache_evictions_total", labels, () -> cache.stats().evictionCount());
+        registry.registerGauge("calculator_cache_size", labels, cache::estimatedSize);
+    }
+
+    private static final class AddKey {
+        final long first;
+        final long second;
+
+        AddKey(long first, long second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AddKey)) {
+                return false;
+            }
+            AddKey other = (AddKey) o;
+            return first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(first) * 31 + Long.hashCode(second);
+        }
+    }
+}
@@ -1,22 +1,103 @@
 package com.github.didiyudha.grpc.calculator.server;
 
+import com.github.didiyudha.grpc.server.ServerBootstrap;
+import com.github.didiyudha.grpc.server.ServerConfig;
+import com.github.didiyudha.grpc.server.ServerWarmUp;
+import com.proto.calculator.AverageBatchRequest;
+import com.proto.calculator.AverageRequest;
+import com.proto.calculator.BatchAddRequest;
+import com.proto.calculator.BatchSquareRootRequest;
+import com.proto.calculator.CalculatorRequest;
+import com.proto.calculator.CalculatorServiceGrpc;
+import com.proto.calculator.FindMaxBatchRequest;
+import com.proto.calculator.FindMaxRequest;
+import com.proto.calculator.OrderStatisticsOptions;
+import com.proto.calculator.OrderStatisticsRequest;
+import com.proto.calculator.PrimeNumberDecompositionRequest;
+import com.proto.calculator.RunningStatisticsRequest;
+import com.proto.calculator.SquareRootRequest;
+import com.proto.calculator.StatisticsWindow;
+import io.grpc.Channel;
 import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.StatusRuntimeException;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class CalculatorServer {
     public static void main(String[] args) throws IOException, InterruptedException {
         System.out.println("Calculator server gRPC");
-        Server server = ServerBuilder.forPort(50055)
-                .addService(new CalculatorServiceImpl())
+        ServerBootstrap bootstrap = new ServerBootstrap(ServerConfig.load("calculator", 50055));
+        Server server = bootstrap.newServerBuilder()
+                .addService(newService(bootstrap, bootstrap.getConfig()))
                 .build();
-        server.start();
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Received shutdown request");
-            server.shutdown();
-            System.out.println("Successfully stoped the server");
-        }));
+        bootstrap.start(server);
         server.awaitTermination();
     }
+
+    /**
+     * The calculator service on the bootstrap's pipeline, with the cache and batching settings of {@code config}.
+     */
+    public static ServerServiceDefinition newService(ServerBootstrap bootstrap, ServerConfig config) {
+        CalculatorResultCache cache = CalculatorResultCache.fromConfig(config);
+        cache.registerMetrics(bootstrap.getMetrics());
+        UnaryBatcher batcher = UnaryBatcher.fromConfig(config, bootstrap.getExecutor());
+        if (batcher != null) {
+            System.out.println("Batching Add and SquareRoot: " + batcher);
+            bootstrap.onShutdown(batcher::shutdown);
+        }
+        CalculatorServiceImpl impl = new CalculatorServiceImpl(cache, bootstrap.getPipeline(), batcher);
+        impl.registerMetrics(bootstrap.getMetrics());
+        ServerServiceDefinition service = impl.bindService();
+        bootstrap.addWarmUp(service, CalculatorServer::warmUp);
+        return service;
+    }
+
+    /**
+     * Calls every calculator method once with small inputs.
+     */
+    static void warmUp(Channel channel) throws InterruptedException {
+        CalculatorServiceGrpc.CalculatorServiceBlockingStub blockingStub = CalculatorServiceGrpc.newBlockingStub(channel);
+        CalculatorServiceGrpc.CalculatorServiceStub asyncStub = CalculatorServiceGrpc.newStub(channel);
+
+        blockingStub.add(CalculatorRequest.newBuilder().setFirstNumber(3).setSecondNumber(10).build());
+        blockingStub.primeNumberDecomposition(PrimeNumberDecompositionRequest.newBuilder().setN(120).build())
+                .forEachRemaining(response -> { });
+        blockingStub.primeNumberDecompositionBatch(PrimeNumberDecompositionRequest.newBuilder().setN(120).build());
+        blockingStub.squareRoot(SquareRootRequest.newBuilder().setNumber(10).build());
+        blockingStub.batchAdd(BatchAddRequest.newBuilder().addFirstNumbers(3).addSecondNumbers(10).build());
+        blockingStub.batchSquareRoot(BatchSquareRootRequest.newBuilder().addNumbers(10).build());
+        try {
+            blockingStub.squareRoot(SquareRootRequest.newBuilder().setNumber(-1).build());
+        } catch (StatusRuntimeException expected) {
+            // warms up the error path too
+        }
+
+        ServerWarmUp.stream(asyncStub::average, Arrays.asList(
+                AverageRequest.newBuilder().setNumber(1).build(),
+                AverageRequest.newBuilder().setNumber(2).build()));
+        ServerWarmUp.stream(asyncStub::averageBatch, Arrays.asList(
+                AverageBatchRequest.newBuilder().addNumbers(1).addNumbers(2).build()));
+        ServerWarmUp.stream(asyncStub::findMax, Arrays.asList(
+                FindMaxRequest.newBuilder().setN(1).build(),
+                FindMaxRequest.newBuilder().setN(5).build()));
+        ServerWarmUp.stream(asyncStub::findMaxBatch, Arrays.asList(
+                FindMaxBatchRequest.newBuilder().addNumbers(1).addNumbers(5).build()));
+        OrderStatisticsOptions options = OrderStatisticsOptions.newBuilder()
+                .setTopK(2)
+                .addQuantiles(0.5)
+                .setChangesOnly(true)
+                .build();
+        ServerWarmUp.stream(asyncStub::orderStatistics, Arrays.asList(
+                OrderStatisticsRequest.newBuilder().addNumbers(1).addNumbers(5).setOptions(options).build(),
+                OrderStatisticsRequest.newBuilder().addNumbers(3).build()));
+        StatisticsWindow window = StatisticsWindow.newBuilder()
+                .setType(StatisticsWindow.Type.SLIDING)
+                .setSize(2)
+                .build();
+        ServerWarmUp.stream(asyncStub::runningStatistics, Arrays.asList(
+                RunningStatisticsRequest.newBuilder().setNumber(1).setWindow(window).build(),
+                RunningStatisticsRequest.newBuilder().setNumber(2).build()));
+    }
 }
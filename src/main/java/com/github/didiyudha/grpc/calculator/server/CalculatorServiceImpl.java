@@ -1,16 +1,62 @@
 package com.github.didiyudha.grpc.calculator.server;
 
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.server.OrderedPipeline;
 import com.proto.calculator.*;
 import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class CalculatorServiceImpl extends CalculatorServiceGrpc.CalculatorServiceImplBase {
+
+    private final CalculatorResultCache cache;
+    private final OrderedPipeline pipeline;
+    private final UnaryBatcher.Lane<CalculatorResponse> addBatches;
+    private final UnaryBatcher.Lane<SquareRootResponse> squareRootBatches;
+
+    public CalculatorServiceImpl() {
+        this(CalculatorResultCache.disabled());
+    }
+
+    public CalculatorServiceImpl(CalculatorResultCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * @param pipeline worker pool for FindMax streams, or null to handle each message inline
+     */
+    public CalculatorServiceImpl(CalculatorResultCache cache, OrderedPipeline pipeline) {
+        this(cache, pipeline, null);
+    }
+
+    /**
+     * @param batcher collects concurrent Add and SquareRoot calls into batches, or null to answer each on its own
+     */
+    public CalculatorServiceImpl(CalculatorResultCache cache, OrderedPipeline pipeline, UnaryBatcher batcher) {
+        this.cache = cache;
+        this.pipeline = pipeline;
+        this.addBatches = batcher != null ? batcher.newLane("Add", this::completeAdds) : null;
+        this.squareRootBatches = batcher != null ? batcher.newLane("SquareRoot", this::completeSquareRoots) : null;
+    }
+
+    /**
+     * Exposes the batch counts when batching is on.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        if (addBatches != null) {
+            addBatches.registerMetrics(registry);
+            squareRootBatches.registerMetrics(registry);
+        }
+    }
+
     @Override
     public void add(CalculatorRequest request, StreamObserver<CalculatorResponse> responseObserver) {
-        Long result = request.getFirstNumber() + request.getSecondNumber();
+        if (addBatches != null) {
+            addBatches.submit(request.getFirstNumber(), request.getSecondNumber(), responseObserver);
+            return;
+        }
+        long result = cache.add(request.getFirstNumber(), request.getSecondNumber());
         CalculatorResponse response = CalculatorResponse
                 .newBuilder()
                 .setTotal(result)
@@ -22,50 +68,62 @@ public class CalculatorServiceImpl extends CalculatorServiceGrpc.CalculatorServi
     @Override
     public void primeNumberDecomposition(PrimeNumberDecompositionRequest request,
                                          StreamObserver<PrimeNumberDecompositionResponse> responseObserver) {
-        Long n = request.getN();
-        Long k = 2L;
+        // uint64 arrives as a signed long; the factorizer treats it as unsigned
+        long[] factors = cache.factor(request.getN());
 
-        while (n > 1) {
-            if (n % k == 0) {
+        ServerCallStreamObserver<PrimeNumberDecompositionResponse> serverObserver =
+                (ServerCallStreamObserver<PrimeNumberDecompositionResponse>) responseObserver;
 
-                PrimeNumberDecompositionResponse res = PrimeNumberDecompositionResponse
-                        .newBuilder()
-                        .setResult(k)
-                        .build();
-                responseObserver.onNext(res);
-                n = n / k;
+        // Both handlers run on the call's serializing executor, so the drain needs no locking
+        Runnable drain = new Runnable() {
+            int next = 0;
+            boolean completed = false;
 
-            } else {
-                k++;
+            @Override
+            public void run() {
+                if (completed || serverObserver.isCancelled()) {
+                    return;
+                }
+                while (next < factors.length && serverObserver.isReady()) {
+                    serverObserver.onNext(PrimeNumberDecompositionResponse
+                            .newBuilder()
+                            .setResult(factors[next++])
+                            .build());
+                }
+                if (next == factors.length) {
+                    completed = true;
+                    serverObserver.onCompleted();
+                }
             }
-        }
-        responseObserver.onCompleted();
+        };
+
+        serverObserver.setOnCancelHandler(() -> {
+            // Nothing to release; the drain checks isCancelled before writing
+        });
+        serverObserver.setOnReadyHandler(drain);
+        drain.run();
     }
 
     @Override
     public StreamObserver<AverageRequest> average(StreamObserver<AverageResultResponse> responseObserver) {
         StreamObserver<AverageRequest> requestStreamObserver = new StreamObserver<AverageRequest>() {
-            Long total = 0L;
-            int numberOfData = 0;
+            // Primitive, overflow-safe aggregates; no per-message logging on this path
+            RunningStatistics statistics = new RunningStatistics();
             @Override
             public void onNext(AverageRequest value) {
-                System.out.println("Receive number: "+ value.getNumber());
-                total += value.getNumber();
-                numberOfData++;
+                statistics.add(value.getNumber());
             }
 
             @Override
             public void onError(Throwable t) {
-                System.out.println(t.getMessage());
-                Status.INVALID_ARGUMENT.withDescription("Invalid request").asException();
+                // The client cancelled; there is nobody left to answer
             }
 
             @Override
             public void onCompleted() {
-                Double avg = ((double) total / (double) numberOfData);
                 responseObserver.onNext(AverageResultResponse
                         .newBuilder()
-                        .setResult(avg)
+                        .setResult(statistics.getMean())
                         .build());
                 responseObserver.onCompleted();
             }
@@ -73,16 +131,78 @@ public class CalculatorServiceImpl extends CalculatorServiceGrpc.CalculatorServi
         return  requestStreamObserver;
     }
 
+    @Override
+    public StreamObserver<RunningStatisticsRequest> runningStatistics(
+            StreamObserver<RunningStatisticsResponse> responseObserver) {
+        return new StreamObserver<RunningStatisticsRequest>() {
+            // Created from the window settings of the first message
+            WindowedStatistics statistics;
+            boolean failed = false;
+
+            @Override
+            public void onNext(RunningStatisticsRequest value) {
+                if (failed) {
+                    return;
+                }
+                if (statistics == null && !start(value.getWindow())) {
+                    return;
+                }
+                if (statistics.add(value.getNumber())) {
+                    responseObserver.onNext(statistics.emit(false));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The client cancelled; there is nobody left to answer
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                if (statistics == null && !start(StatisticsWindow.getDefaultInstance())) {
+                    return;
+                }
+                responseObserver.onNext(statistics.emit(true));
+                responseObserver.onCompleted();
+            }
+
+            private boolean start(StatisticsWindow window) {
+                try {
+                    statistics = new WindowedStatistics(window);
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    failed = true;
+                    responseObserver.onError(Status.INVALID_ARGUMENT
+                            .withDescription(e.getMessage())
+                            .asRuntimeException());
+                    return false;
+                }
+            }
+        };
+    }
+
     @Override
     public StreamObserver<FindMaxRequest> findMax(StreamObserver<FindMaxResponse> responseObserver) {
-        List<Long> data = new ArrayList<>();
+        if (pipeline != null) {
+            // The running maximum depends on order, so it is kept in the sequential step
+            long[] max = {Long.MIN_VALUE};
+            return pipeline.start(responseObserver, FindMaxRequest::getN, n -> {
+                max[0] = Math.max(max[0], n);
+                return FindMaxResponse.newBuilder()
+                        .setResult(max[0])
+                        .build();
+            });
+        }
 
         StreamObserver<FindMaxRequest> requestStreamObserver =
                 new StreamObserver<FindMaxRequest>() {
-                    Long max = -100000L;
+                    long max = Long.MIN_VALUE;
                     @Override
                     public void onNext(FindMaxRequest value) {
-                        Long n = value.getN();
+                        long n = value.getN();
                         if (n > max) {
                             max = n;
                         }
@@ -105,25 +225,222 @@ public class CalculatorServiceImpl extends CalculatorServiceGrpc.CalculatorServi
         return requestStreamObserver;
     }
 
+    @Override
+    public StreamObserver<OrderStatisticsRequest> orderStatistics(
+            StreamObserver<OrderStatisticsResponse> responseObserver) {
+        return new StreamObserver<OrderStatisticsRequest>() {
+            // Created from the options of the first message
+            OrderStatistics statistics;
+            boolean failed = false;
+
+            @Override
+            public void onNext(OrderStatisticsRequest value) {
+                if (failed) {
+                    return;
+                }
+                if (statistics == null && !start(value.getOptions())) {
+                    return;
+                }
+                if (statistics.add(value)) {
+                    responseObserver.onNext(statistics.emit(false));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The client cancelled; there is nobody left to answer
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                if (statistics == null && !start(OrderStatisticsOptions.getDefaultInstance())) {
+                    return;
+                }
+                responseObserver.onNext(statistics.emit(true));
+                responseObserver.onCompleted();
+            }
+
+            private boolean start(OrderStatisticsOptions options) {
+                try {
+                    statistics = new OrderStatistics(options);
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    failed = true;
+                    responseObserver.onError(Status.INVALID_ARGUMENT
+                            .withDescription(e.getMessage())
+                            .asRuntimeException());
+                    return false;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void primeNumberDecompositionBatch(PrimeNumberDecompositionRequest request,
+                                              StreamObserver<PrimeNumberDecompositionBatchResponse> responseObserver) {
+        long[] factors = cache.factor(request.getN());
+
+        PrimeNumberDecompositionBatchResponse.Builder response = PrimeNumberDecompositionBatchResponse.newBuilder();
+        for (long factor : factors) {
+            response.addResults(factor);
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<AverageBatchRequest> averageBatch(StreamObserver<AverageResultResponse> responseObserver) {
+        return new StreamObserver<AverageBatchRequest>() {
+            RunningStatistics statistics = new RunningStatistics();
+
+            @Override
+            public void onNext(AverageBatchRequest value) {
+                // Indexed access reads the packed field without boxing
+                for (int i = 0; i < value.getNumbersCount(); i++) {
+                    statistics.add(value.getNumbers(i));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The client cancelled; there is nobody left to answer
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onNext(AverageResultResponse
+                        .newBuilder()
+                        .setResult(statistics.getMean())
+                        .build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public StreamObserver<FindMaxBatchRequest> findMaxBatch(StreamObserver<FindMaxBatchResponse> responseObserver) {
+        return new StreamObserver<FindMaxBatchRequest>() {
+            long max = Long.MIN_VALUE;
+
+            @Override
+            public void onNext(FindMaxBatchRequest value) {
+                FindMaxBatchResponse.Builder response = FindMaxBatchResponse.newBuilder();
+                for (int i = 0; i < value.getNumbersCount(); i++) {
+                    max = Math.max(max, value.getNumbers(i));
+                    response.addResults(max);
+                }
+                responseObserver.onNext(response.build());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The client cancelled; there is nobody left to answer
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
     @Override
     public void squareRoot(SquareRootRequest request, StreamObserver<SquareRootResponse> responseObserver) {
         Integer number = request.getNumber();
 
         if (number > 0) {
-            Double numberRoot = Math.sqrt(number);
+            if (squareRootBatches != null) {
+                squareRootBatches.submit(number, 0, responseObserver);
+                return;
+            }
+            Double numberRoot = cache.squareRoot(number);
             responseObserver.onNext(SquareRootResponse
                     .newBuilder()
                     .setNumberRoot(numberRoot)
                     .build());
             responseObserver.onCompleted();
         } else {
-            responseObserver.onError(
-                    Status
-                            .INVALID_ARGUMENT
-                            .withDescription("The number being sent is not positive")
-                            .augmentDescription("Number sent: "+ number)
-                            .asRuntimeException()
-            );
+            responseObserver.onError(notPositive(number));
+        }
+    }
+
+    @Override
+    public void batchAdd(BatchAddRequest request, StreamObserver<BatchAddResponse> responseObserver) {
+        int count = request.getFirstNumbersCount();
+        if (count != request.getSecondNumbersCount()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("first_numbers and second_numbers must have the same length: "
+                            + count + " and " + request.getSecondNumbersCount())
+                    .asRuntimeException());
+            return;
+        }
+        BatchAddResponse.Builder response = BatchAddResponse.newBuilder();
+        // Indexed access reads the packed fields without boxing
+        for (int i = 0; i < count; i++) {
+            response.addTotals(cache.add(request.getFirstNumbers(i), request.getSecondNumbers(i)));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void batchSquareRoot(BatchSquareRootRequest request, StreamObserver<BatchSquareRootResponse> responseObserver) {
+        int count = request.getNumbersCount();
+        for (int i = 0; i < count; i++) {
+            int number = request.getNumbers(i);
+            if (number <= 0) {
+                responseObserver.onError(notPositive(number).getStatus()
+                        .augmentDescription("Index: " + i)
+                        .asRuntimeException());
+                return;
+            }
+        }
+        BatchSquareRootResponse.Builder response = BatchSquareRootResponse.newBuilder();
+        for (int i = 0; i < count; i++) {
+            response.addNumberRoots(cache.squareRoot(request.getNumbers(i)));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    private void completeAdds(long[] first, long[] second, StreamObserver<CalculatorResponse>[] observers, int size) {
+        for (int i = 0; i < size; i++) {
+            first[i] = cache.add(first[i], second[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            complete(observers[i], CalculatorResponse.newBuilder().setTotal(first[i]).build());
+        }
+    }
+
+    private void completeSquareRoots(long[] numbers, long[] unused, StreamObserver<SquareRootResponse>[] observers,
+                                     int size) {
+        double[] roots = new double[size];
+        for (int i = 0; i < size; i++) {
+            roots[i] = cache.squareRoot((int) numbers[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            complete(observers[i], SquareRootResponse.newBuilder().setNumberRoot(roots[i]).build());
+        }
+    }
+
+    // A call cancelled while it waited must not keep the rest of its batch from completing
+    private static <RespT> void complete(StreamObserver<RespT> observer, RespT response) {
+        try {
+            observer.onNext(response);
+            observer.onCompleted();
+        } catch (StatusRuntimeException e) {
+            // The client is gone
         }
     }
+
+    private static StatusRuntimeException notPositive(int number) {
+        return Status
+                .INVALID_ARGUMENT
+                .withDescription("The number being sent is not positive")
+                .augmentDescription("Number sent: "+ number)
+                .asRuntimeException();
+    }
 }
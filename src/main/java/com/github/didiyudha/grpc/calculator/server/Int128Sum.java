@@ -0,0 +1,38 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+/**
+ * Exact running sum of int64 values in 128-bit two's complement, so no
+ * realistic stream length can overflow it.
+ */
+final class Int128Sum {
+
+    private long high;
+    private long low;
+
+    void add(long value) {
+        long sum = low + value;
+        long carry = Long.compareUnsigned(sum, low) < 0 ? 1 : 0;
+        high += (value >> 63) + carry;
+        low = sum;
+    }
+
+    void subtract(long value) {
+        long borrow = Long.compareUnsigned(low, value) < 0 ? 1 : 0;
+        high -= (value >> 63) + borrow;
+        low -= value;
+    }
+
+    void reset() {
+        high = 0;
+        low = 0;
+    }
+
+    double toDouble() {
+        if (high == (low >> 63)) {
+            // Fits in a long; convert directly to avoid rounding twice
+            return low;
+        }
+        double unsignedLow = low >= 0 ? low : ((low >>> 1) | (low & 1)) * 2.0;
+        return high * 0x1p64 + unsignedLow;
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import com.proto.calculator.OrderStatisticsOptions;
+import com.proto.calculator.OrderStatisticsRequest;
+import com.proto.calculator.OrderStatisticsResponse;
+import com.proto.calculator.QuantileEstimate;
+
+import java.util.Arrays;
+
+/**
+ * Applies {@link OrderStatisticsOptions} to a stream of numbers: exact count,
+ * min and max, the largest values through {@link TopK} and estimated
+ * quantiles through a {@link QuantileSketch}, and decides when a response is
+ * due. Memory depends on the options, not on the length of the stream.
+ */
+final class OrderStatistics {
+
+    static final int MAX_TOP_K = 10_000;
+    static final int DEFAULT_SKETCH_SIZE = 200;
+    static final int MAX_SKETCH_SIZE = 100_000;
+
+    private final TopK top;
+    private final QuantileSketch sketch;
+    private final double[] quantiles;
+    private final boolean changesOnly;
+    private final long[] estimates;
+    private final long[] emittedEstimates;
+
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private boolean estimatesCurrent;
+
+    OrderStatistics(OrderStatisticsOptions options) {
+        long topK = Integer.toUnsignedLong(options.getTopK());
+        if (topK > MAX_TOP_K) {
+            throw new IllegalArgumentException("top_k must be at most " + MAX_TOP_K + ": " + topK);
+        }
+        long sketchSize = Integer.toUnsignedLong(options.getSketchSize());
+        if (sketchSize > MAX_SKETCH_SIZE) {
+            throw new IllegalArgumentException("sketch_size must be at most " + MAX_SKETCH_SIZE + ": " + sketchSize);
+        }
+        this.quantiles = new double[options.getQuantilesCount()];
+        for (int i = 0; i < quantiles.length; i++) {
+            double quantile = options.getQuantiles(i);
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1: " + quantile);
+            }
+            quantiles[i] = quantile;
+        }
+
+        this.top = topK > 0 ? new TopK((int) topK) : null;
+        this.sketch = quantiles.length > 0
+                ? new QuantileSketch(sketchSize > 0 ? (int) sketchSize : DEFAULT_SKETCH_SIZE)
+                : null;
+        this.changesOnly = options.getChangesOnly();
+        this.estimates = new long[quantiles.length];
+        this.emittedEstimates = new long[quantiles.length];
+    }
+
+    /**
+     * Adds the numbers of one request and returns true when a response is due:
+     * always, or with {@code changes_only} only when a reported value moved.
+     */
+    boolean add(OrderStatisticsRequest request) {
+        boolean changed = false;
+        // Indexed access reads the packed field without boxing
+        for (int i = 0; i < request.getNumbersCount(); i++) {
+            long value = request.getNumbers(i);
+            count++;
+            if (value < min) {
+                min = value;
+                changed = true;
+            }
+            if (value > max) {
+                max = value;
+                changed = true;
+            }
+            if (top != null && top.add(value)) {
+                changed = true;
+            }
+            if (sketch != null) {
+                sketch.add(value);
+                estimatesCurrent = false;
+            }
+        }
+        if (!changesOnly || changed) {
+            return true;
+        }
+        // The sketch changes with every value, so compare what it reports instead
+        return sketch != null && !estimatesCurrent && !Arrays.equals(updateEstimates(), emittedEstimates);
+    }
+
+    OrderStatisticsResponse emit(boolean complete) {
+        OrderStatisticsResponse.Builder response = OrderStatisticsResponse.newBuilder()
+                .setCount(count)
+                .setComplete(complete);
+        if (count == 0) {
+            return response.build();
+        }
+        response.setMin(min).setMax(max);
+        if (top != null) {
+            for (long value : top.values()) {
+                response.addTop(value);
+            }
+        }
+        if (sketch != null) {
+            long[] current = estimatesCurrent ? estimates : updateEstimates();
+            for (int i = 0; i < quantiles.length; i++) {
+                response.addQuantiles(QuantileEstimate.newBuilder()
+                        .setQuantile(quantiles[i])
+                        .setValue(current[i]));
+            }
+            System.arraycopy(current, 0, emittedEstimates, 0, current.length);
+        }
+        return response.build();
+    }
+
+    private long[] updateEstimates() {
+        sketch.quantiles(quantiles, estimates);
+        estimatesCurrent = true;
+        return estimates;
+    }
+}
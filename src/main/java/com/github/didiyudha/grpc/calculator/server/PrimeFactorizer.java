@@ -0,0 +1,319 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import java.util.Arrays;
+
+/**
+ * Prime factorization of unsigned 64-bit integers.
+ *
+ * Small factors are stripped by trial division against a precomputed sieve,
+ * the remaining cofactor is tested with a Miller-Rabin check that is
+ * deterministic for every 64-bit input, and composites are split with
+ * Brent's variant of Pollard-Rho. All modular arithmetic is done in
+ * Montgomery form on primitive longs, so there is no boxing and no
+ * BigInteger on the hot path.
+ */
+public final class PrimeFactorizer {
+
+    private static final int SMALL_PRIME_LIMIT = 1 << 10;
+    private static final long[] SMALL_PRIMES = sieve(SMALL_PRIME_LIMIT);
+    private static final long SMALL_PRIME_LIMIT_SQUARED = (long) SMALL_PRIME_LIMIT * SMALL_PRIME_LIMIT;
+
+    // These bases make Miller-Rabin exact for all n < 2^64
+    private static final long[] WITNESSES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37};
+
+    private static final long[] NO_FACTORS = new long[0];
+
+    private PrimeFactorizer() {
+    }
+
+    /**
+     * Returns the prime factors of {@code n}, treated as unsigned, in
+     * ascending unsigned order with multiplicity. Zero and one have no
+     * prime factors.
+     */
+    public static long[] factor(long n) {
+        if (n == 0 || n == 1) {
+            return NO_FACTORS;
+        }
+
+        // A 64-bit number has at most 64 prime factors
+        long[] factors = new long[64];
+        int count = 0;
+
+        int twos = Long.numberOfTrailingZeros(n);
+        for (int i = 0; i < twos; i++) {
+            factors[count++] = 2;
+        }
+        n >>>= twos;
+
+        for (int i = 1; i < SMALL_PRIMES.length && n != 1; i++) {
+            long p = SMALL_PRIMES[i];
+            if (n > 0 && n < p * p) {
+                break;
+            }
+            while (remainder(n, p) == 0) {
+                factors[count++] = p;
+                n = divide(n, p);
+            }
+        }
+
+        if (n == 1) {
+            return Arrays.copyOf(factors, count);
+        }
+
+        int firstLarge = count;
+        count = factorLarge(n, factors, count);
+        sortUnsigned(factors, firstLarge, count);
+        return Arrays.copyOf(factors, count);
+    }
+
+    /**
+     * Deterministic primality test for {@code n} treated as unsigned.
+     */
+    public static boolean isPrime(long n) {
+        if (n >= 0 && n < 2) {
+            return false;
+        }
+        for (long p : SMALL_PRIMES) {
+            if (n == p) {
+                return true;
+            }
+            if (remainder(n, p) == 0) {
+                return false;
+            }
+        }
+        if (n > 0 && n < SMALL_PRIME_LIMIT_SQUARED) {
+            return true;
+        }
+        return millerRabin(new Montgomery(n));
+    }
+
+    // n is odd, has no factor below SMALL_PRIME_LIMIT and is greater than one
+    private static int factorLarge(long n, long[] factors, int count) {
+        if ((n > 0 && n < SMALL_PRIME_LIMIT_SQUARED) || millerRabin(new Montgomery(n))) {
+            factors[count++] = n;
+            return count;
+        }
+        long d = pollardRho(n);
+        count = factorLarge(d, factors, count);
+        return factorLarge(divide(n, d), factors, count);
+    }
+
+    private static boolean millerRabin(Montgomery m) {
+        long n = m.n;
+        long d = n - 1;
+        int s = Long.numberOfTrailingZeros(d);
+        d >>>= s;
+
+        long one = m.one;
+        long minusOne = n - one;
+
+        for (long a : WITNESSES) {
+            long x = m.pow(m.toMontgomery(a), d);
+            if (x == one || x == minusOne) {
+                continue;
+            }
+            boolean composite = true;
+            for (int r = 1; r < s; r++) {
+                x = m.multiply(x, x);
+                if (x == minusOne) {
+                    composite = false;
+                    break;
+                }
+            }
+            if (composite) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Brent's cycle detection with batched gcds; n is an odd composite
+    private static long pollardRho(long n) {
+        Montgomery m = new Montgomery(n);
+        for (long c = 1; ; c++) {
+            long mc = m.toMontgomery(c);
+            long y = m.toMontgomery(2);
+            long x = y;
+            long ys = y;
+            long q = m.one;
+            long g = 1;
+            int batch = 128;
+
+            for (long r = 1; g == 1; r <<= 1) {
+                x = y;
+                for (long i = 0; i < r; i++) {
+                    y = m.add(m.multiply(y, y), mc);
+                }
+                for (long k = 0; k < r && g == 1; k += batch) {
+                    ys = y;
+                    long steps = Math.min(batch, r - k);
+                    for (long i = 0; i < steps; i++) {
+                        y = m.add(m.multiply(y, y), mc);
+                        q = m.multiply(q, m.distance(x, y));
+                    }
+                    g = gcd(q, n);
+                }
+            }
+
+            if (g == n) {
+                // The batch overshot; replay it one step at a time
+                do {
+                    ys = m.add(m.multiply(ys, ys), mc);
+                    g = gcd(m.distance(x, ys), n);
+                } while (g == 1);
+            }
+
+            if (g != n) {
+                return g;
+            }
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        do {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (Long.compareUnsigned(a, b) > 0) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        } while (b != 0);
+        return a << shift;
+    }
+
+    private static long remainder(long n, long d) {
+        return n >= 0 ? n % d : Long.remainderUnsigned(n, d);
+    }
+
+    private static long divide(long n, long d) {
+        return n >= 0 ? n / d : Long.divideUnsigned(n, d);
+    }
+
+    // Sorts by unsigned value by flipping the sign bit around a signed sort
+    private static void sortUnsigned(long[] a, int from, int to) {
+        for (int i = from; i < to; i++) {
+            a[i] ^= Long.MIN_VALUE;
+        }
+        Arrays.sort(a, from, to);
+        for (int i = from; i < to; i++) {
+            a[i] ^= Long.MIN_VALUE;
+        }
+    }
+
+    private static long[] sieve(int limit) {
+        boolean[] composite = new boolean[limit];
+        long[] primes = new long[limit];
+        int count = 0;
+        for (int i = 2; i < limit; i++) {
+            if (!composite[i]) {
+                primes[count++] = i;
+                for (long j = (long) i * i; j < limit; j += i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+        return Arrays.copyOf(primes, count);
+    }
+
+    /**
+     * Montgomery arithmetic modulo an odd unsigned 64-bit modulus.
+     */
+    private static final class Montgomery {
+        final long n;
+        final long nInverse;
+        final long one;
+        final long rSquared;
+
+        Montgomery(long n) {
+            this.n = n;
+
+            // Newton iteration doubles the correct low bits each round: 3 -> 6 -> ... -> 96
+            long inv = n;
+            for (int i = 0; i < 5; i++) {
+                inv *= 2 - n * inv;
+            }
+            this.nInverse = -inv;
+
+            // R mod n with R = 2^64
+            this.one = Long.remainderUnsigned(-n, n);
+
+            long r2 = one;
+            for (int i = 0; i < 64; i++) {
+                r2 = add(r2, r2);
+            }
+            this.rSquared = r2;
+        }
+
+        long toMontgomery(long a) {
+            return multiply(Long.remainderUnsigned(a, n), rSquared);
+        }
+
+        long multiply(long a, long b) {
+            return reduce(multiplyHigh(a, b), a * b);
+        }
+
+        long add(long a, long b) {
+            long s = a + b;
+            if (Long.compareUnsigned(s, a) < 0 || Long.compareUnsigned(s, n) >= 0) {
+                s -= n;
+            }
+            return s;
+        }
+
+        long distance(long a, long b) {
+            return Long.compareUnsigned(a, b) >= 0 ? a - b : b - a;
+        }
+
+        long pow(long base, long exponent) {
+            long result = one;
+            while (exponent != 0) {
+                if ((exponent & 1) != 0) {
+                    result = multiply(result, base);
+                }
+                base = multiply(base, base);
+                exponent >>>= 1;
+            }
+            return result;
+        }
+
+        // REDC of the 128-bit value (hi, lo); the result is below n
+        private long reduce(long hi, long lo) {
+            long u = lo * nInverse;
+            long carry = lo != 0 ? 1 : 0;
+            long s = hi + multiplyHigh(u, n);
+            boolean overflow = Long.compareUnsigned(s, hi) < 0;
+            s += carry;
+            overflow |= carry != 0 && s == 0;
+            if (overflow || Long.compareUnsigned(s, n) >= 0) {
+                s -= n;
+            }
+            return s;
+        }
+
+        // Unsigned high 64 bits of a 64x64 multiply
+        private static long multiplyHigh(long a, long b) {
+            long aLo = a & 0xFFFFFFFFL;
+            long aHi = a >>> 32;
+            long bLo = b & 0xFFFFFFFFL;
+            long bHi = b >>> 32;
+
+            long loLo = aLo * bLo;
+            long hiLo = aHi * bLo;
+            long loHi = aLo * bHi;
+            long hiHi = aHi * bHi;
+
+            long cross = (loLo >>> 32) + (hiLo & 0xFFFFFFFFL) + loHi;
+            return hiHi + (hiLo >>> 32) + (cross >>> 32);
+        }
+    }
+}
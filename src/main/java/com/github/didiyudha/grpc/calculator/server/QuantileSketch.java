@@ -0,0 +1,248 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mergeable quantile sketch after Karnin, Lang and Liberty (KLL).
+ *
+ * Values enter level 0. When the sketch is full, the lowest full level is
+ * sorted and every other value, from a random offset, moves up one level,
+ * where it stands for twice as many values. Level capacities shrink by 2/3
+ * from the top level down, so the sketch retains about 3k values however long
+ * the stream gets, plus a few per doubling of the count. Compactions are
+ * random, so the error bound is probabilistic: an estimated quantile's rank
+ * is within 1.5 / k of the count 99% of the time, over 300 runs of a
+ * million values each, as {@code QuantileSketchTest} checks. That is 0.75%
+ * for k = 200. Merged sketches stay within the same bound.
+ */
+final class QuantileSketch {
+
+    private static final double DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 8;
+
+    private final int k;
+    private long[][] levels = new long[1][];
+    private int[] sizes = new int[1];
+    private int[] capacities = new int[1];
+    private int retained;
+    private int maxRetained;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    // Sorted values with cumulative weights. New values are inserted as they
+    // arrive; after a compaction the view is rebuilt on the next query
+    private long[] sortedValues = new long[0];
+    private long[] cumulativeWeights = new long[0];
+    private long[] mergeValues = new long[0];
+    private long[] mergeWeights = new long[0];
+    private int sortedSize;
+    private boolean sorted = true;
+
+    QuantileSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException("Sketch size must be at least " + MIN_LEVEL_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        levels[0] = new long[k];
+        updateCapacities();
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    void add(long value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        if (retained >= maxRetained) {
+            compress();
+            sorted = false;
+        } else if (sorted) {
+            insertSorted(value);
+        }
+    }
+
+    /**
+     * Adds all values summarized by {@code other}, which is left unchanged,
+     * e.g. to combine the sketches of several streams for a dashboard. The
+     * merged sketch keeps the error bound of a single one.
+     */
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        while (levels.length < other.levels.length) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sorted = false;
+        while (retained >= maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * Writes the estimated value at each of {@code quantiles} into {@code values}.
+     * Quantile 0 is the exact minimum and 1 the exact maximum.
+     */
+    void quantiles(double[] quantiles, long[] values) {
+        if (count == 0) {
+            throw new IllegalStateException("Sketch is empty");
+        }
+        if (!sorted) {
+            sort();
+        }
+        long totalWeight = cumulativeWeights[sortedSize - 1];
+        for (int q = 0; q < quantiles.length; q++) {
+            double quantile = quantiles[q];
+            if (quantile <= 0) {
+                values[q] = min;
+            } else if (quantile >= 1) {
+                values[q] = max;
+            } else {
+                long rank = (long) Math.ceil(quantile * totalWeight);
+                int index = Arrays.binarySearch(cumulativeWeights, 0, sortedSize, rank);
+                values[q] = sortedValues[index >= 0 ? index : -index - 1];
+            }
+        }
+    }
+
+    private void append(int level, long value) {
+        long[] items = levels[level];
+        if (sizes[level] == items.length) {
+            levels[level] = items = Arrays.copyOf(items, Math.max(MIN_LEVEL_CAPACITY, items.length * 2));
+        }
+        items[sizes[level]++] = value;
+        retained++;
+    }
+
+    // Compacts the lowest full level; a compaction halves that level, which is
+    // enough to get below the total capacity most of the time
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacities[h]) {
+                if (h + 1 == levels.length) {
+                    addLevel();
+                }
+                compact(h);
+                if (retained < maxRetained) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Promotes every other value of a sorted level; an odd one out stays behind
+    private void compact(int level) {
+        long[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        int kept = size & 1;
+        int offset = kept + (ThreadLocalRandom.current().nextBoolean() ? 1 : 0);
+        for (int i = offset; i < size; i += 2) {
+            append(level + 1, items[i]);
+        }
+        retained -= size - kept;
+        sizes[level] = kept;
+    }
+
+    // Keeps the view current for a value added without compaction: O(retained) moves instead of a rebuild
+    private void insertSorted(long value) {
+        if (sortedSize == sortedValues.length) {
+            sorted = false;
+            return;
+        }
+        int low = 0;
+        int high = sortedSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedValues[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        System.arraycopy(sortedValues, low, sortedValues, low + 1, sortedSize - low);
+        System.arraycopy(cumulativeWeights, low, cumulativeWeights, low + 1, sortedSize - low);
+        sortedValues[low] = value;
+        cumulativeWeights[low] = low == 0 ? 1 : cumulativeWeights[low - 1] + 1;
+        sortedSize++;
+        for (int i = low + 1; i < sortedSize; i++) {
+            cumulativeWeights[i]++;
+        }
+    }
+
+    private void addLevel() {
+        int height = levels.length + 1;
+        levels = Arrays.copyOf(levels, height);
+        sizes = Arrays.copyOf(sizes, height);
+        capacities = Arrays.copyOf(capacities, height);
+        levels[height - 1] = new long[MIN_LEVEL_CAPACITY];
+        updateCapacities();
+    }
+
+    private void updateCapacities() {
+        int height = levels.length;
+        maxRetained = 0;
+        for (int h = 0; h < height; h++) {
+            capacities[h] = Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(DECAY, height - 1 - h)));
+            maxRetained += capacities[h];
+        }
+    }
+
+    // Merges the levels, each sorted in place, into one run of values and
+    // their weights, then turns the weights into running totals
+    private void sort() {
+        if (sortedValues.length < retained) {
+            int length = Math.max(retained, sortedValues.length * 2);
+            sortedValues = new long[length];
+            cumulativeWeights = new long[length];
+            mergeValues = new long[length];
+            mergeWeights = new long[length];
+        }
+        sortedSize = 0;
+        for (int h = 0; h < levels.length; h++) {
+            int size = sizes[h];
+            if (size == 0) {
+                continue;
+            }
+            long[] items = levels[h];
+            Arrays.sort(items, 0, size);
+            long weight = 1L << h;
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < sortedSize || j < size) {
+                if (j == size || (i < sortedSize && sortedValues[i] <= items[j])) {
+                    mergeValues[n] = sortedValues[i];
+                    mergeWeights[n++] = cumulativeWeights[i++];
+                } else {
+                    mergeValues[n] = items[j++];
+                    mergeWeights[n++] = weight;
+                }
+            }
+            long[] swap = sortedValues;
+            sortedValues = mergeValues;
+            mergeValues = swap;
+            swap = cumulativeWeights;
+            cumulativeWeights = mergeWeights;
+            mergeWeights = swap;
+            sortedSize = n;
+        }
+        for (int i = 1; i < sortedSize; i++) {
+            cumulativeWeights[i] += cumulativeWeights[i - 1];
+        }
+        sorted = true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+/**
+ * Cumulative statistics in constant space. The sum is exact; the variance
+ * uses Welford's update so it stays stable for large values and long streams.
+ */
+final class RunningStatistics implements StreamStatistics {
+
+    private final Int128Sum sum = new Int128Sum();
+    private long count;
+    private double mean;
+    private double m2;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    @Override
+    public void add(long value) {
+        count++;
+        sum.add(value);
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void reset() {
+        sum.reset();
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public double getSum() {
+        return sum.toDouble();
+    }
+
+    @Override
+    public double getMean() {
+        // Exact sum over count; Welford's mean is only used for the variance
+        return count == 0 ? Double.NaN : sum.toDouble() / count;
+    }
+
+    @Override
+    public double getVariance() {
+        return count < 2 ? 0 : m2 / count;
+    }
+
+    @Override
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    @Override
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+/**
+ * Statistics over the last {@code size} values. Values live in a primitive
+ * ring buffer; min and max come from monotonic deques of stream positions, so
+ * every update is amortized O(1) with no allocation.
+ */
+final class SlidingWindowStatistics implements StreamStatistics {
+
+    private final long[] values;
+    private final Int128Sum sum = new Int128Sum();
+    private final MonotonicDeque minimums;
+    private final MonotonicDeque maximums;
+    private long added;
+    private double mean;
+    private double m2;
+
+    SlidingWindowStatistics(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + size);
+        }
+        this.values = new long[size];
+        this.minimums = new MonotonicDeque(size, true);
+        this.maximums = new MonotonicDeque(size, false);
+    }
+
+    @Override
+    public void add(long value) {
+        int size = values.length;
+        if (added >= size) {
+            evict(values[(int) (added % size)]);
+        }
+        long position = added++;
+        values[(int) (position % size)] = value;
+
+        long count = getCount();
+        sum.add(value);
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+
+        long oldest = position - size + 1;
+        minimums.push(position, value, oldest);
+        maximums.push(position, value, oldest);
+    }
+
+    // Welford's update in reverse for the value leaving a full window
+    private void evict(long value) {
+        long count = values.length;
+        sum.subtract(value);
+        if (count == 1) {
+            mean = 0;
+            m2 = 0;
+            return;
+        }
+        double oldMean = mean;
+        mean = (mean * count - value) / (count - 1);
+        m2 = Math.max(0, m2 - (value - oldMean) * (value - mean));
+    }
+
+    @Override
+    public long getCount() {
+        return Math.min(added, values.length);
+    }
+
+    @Override
+    public double getSum() {
+        return sum.toDouble();
+    }
+
+    @Override
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? Double.NaN : sum.toDouble() / count;
+    }
+
+    @Override
+    public double getVariance() {
+        long count = getCount();
+        return count < 2 ? 0 : m2 / count;
+    }
+
+    @Override
+    public long getMin() {
+        return added == 0 ? 0 : minimums.peek();
+    }
+
+    @Override
+    public long getMax() {
+        return added == 0 ? 0 : maximums.peek();
+    }
+
+    /**
+     * Stream positions whose values are strictly increasing (for minimums) or
+     * decreasing (for maximums) from head to tail; the head is the extreme.
+     */
+    private final class MonotonicDeque {
+        private final long[] positions;
+        private final boolean minimum;
+        private int head;
+        private int size;
+
+        MonotonicDeque(int capacity, boolean minimum) {
+            this.positions = new long[capacity];
+            this.minimum = minimum;
+        }
+
+        void push(long position, long value, long oldest) {
+            int capacity = positions.length;
+            while (size > 0 && positions[head] < oldest) {
+                head = (head + 1) % capacity;
+                size--;
+            }
+            while (size > 0) {
+                long tail = values[(int) (positions[(head + size - 1) % capacity] % values.length)];
+                if (minimum ? tail >= value : tail <= value) {
+                    size--;
+                } else {
+                    break;
+                }
+            }
+            positions[(head + size) % capacity] = position;
+            size++;
+        }
+
+        long peek() {
+            return values[(int) (positions[head] % values.length)];
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+/**
+ * Order-independent aggregates over a stream of int64 values.
+ */
+interface StreamStatistics {
+
+    void add(long value);
+
+    long getCount();
+
+    double getSum();
+
+    /** NaN when no value has been added. */
+    double getMean();
+
+    /** Population variance, 0 when fewer than two values have been added. */
+    double getVariance();
+
+    /** 0 when no value has been added. */
+    long getMin();
+
+    /** 0 when no value has been added. */
+    long getMax();
+}
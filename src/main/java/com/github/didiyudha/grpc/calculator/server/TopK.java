@@ -0,0 +1,79 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import java.util.Arrays;
+
+/**
+ * The {@code k} largest values of a stream, kept in a primitive min-heap whose
+ * root is the smallest value still in the top. Values below the root are
+ * rejected with a single comparison, so most updates of a long stream cost
+ * O(1) and none allocates.
+ */
+final class TopK {
+
+    private final long[] heap;
+    private int size;
+
+    TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.heap = new long[k];
+    }
+
+    /**
+     * Adds a value and returns true when the top values changed.
+     */
+    boolean add(long value) {
+        if (size < heap.length) {
+            siftUp(size++, value);
+            return true;
+        }
+        if (value <= heap[0]) {
+            return false;
+        }
+        siftDown(0, value);
+        return true;
+    }
+
+    /**
+     * The top values, largest first.
+     */
+    long[] values() {
+        long[] values = Arrays.copyOf(heap, size);
+        Arrays.sort(values);
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            long swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    private void siftUp(int index, long value) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private void siftDown(int index, long value) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
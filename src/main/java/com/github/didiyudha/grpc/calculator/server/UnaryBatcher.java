@@ -0,0 +1,177 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.server.ServerConfig;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in micro-batching of small unary calls such as Add and SquareRoot.
+ *
+ * Concurrent calls are collected until {@code maxBatchSize} are waiting or
+ * the first has waited {@code lingerMicros}. The batch is then evaluated in
+ * one primitive loop and its calls are completed back to back. Their
+ * responses therefore reach each connection's write queue together and share
+ * its flushes. A full batch is run by the caller that filled it, an expired
+ * one on the server's executor; the batcher's timer thread only decides when
+ * a batch has expired, so responses are not all serialized on that thread.
+ *
+ * Batching trades latency for throughput: a call that arrives alone waits the
+ * full linger. It only pays off when many tiny calls arrive at once.
+ */
+public final class UnaryBatcher {
+
+    /**
+     * Evaluates and completes one batch of {@code size} calls. The arrays are owned by the batch.
+     */
+    @FunctionalInterface
+    interface Evaluator<RespT> {
+        void evaluate(long[] first, long[] second, StreamObserver<RespT>[] observers, int size);
+    }
+
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param maxBatchSize calls that make a full batch, at least 2
+     * @param lingerMicros how long the first call of a batch waits for more, at least 1
+     * @param executor runs expired batches, normally the server's executor
+     */
+    public UnaryBatcher(int maxBatchSize, long lingerMicros, Executor executor) {
+        if (maxBatchSize < 2) {
+            throw new IllegalArgumentException("Batch size must be at least 2: " + maxBatchSize);
+        }
+        if (lingerMicros < 1) {
+            throw new IllegalArgumentException("Linger must be at least 1 microsecond: " + lingerMicros);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.executor = executor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("unary-batcher", true));
+    }
+
+    /**
+     * Reads {@code batch.lingerMicros} and {@code batch.maxSize} (default 64).
+     * Returns null when the linger is 0, the default: batching is off.
+     */
+    public static UnaryBatcher fromConfig(ServerConfig config, Executor executor) {
+        long lingerMicros = config.getLong("batch.lingerMicros", 0);
+        if (lingerMicros <= 0) {
+            return null;
+        }
+        return new UnaryBatcher(config.getInt("batch.maxSize", 64), lingerMicros, executor);
+    }
+
+    <RespT> Lane<RespT> newLane(String name, Evaluator<RespT> evaluator) {
+        return new Lane<>(name, evaluator);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "batches of up to " + maxBatchSize + " within " + TimeUnit.NANOSECONDS.toMicros(lingerNanos) + " us";
+    }
+
+    /**
+     * Batches of one kind of call.
+     */
+    final class Lane<RespT> {
+
+        private final String name;
+        private final Evaluator<RespT> evaluator;
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+
+        // Guarded by this
+        private long[] first;
+        private long[] second;
+        private StreamObserver<RespT>[] observers;
+        private int size;
+        private long generation;
+
+        Lane(String name, Evaluator<RespT> evaluator) {
+            this.name = name;
+            this.evaluator = evaluator;
+            reset();
+        }
+
+        void submit(long firstOperand, long secondOperand, StreamObserver<RespT> observer) {
+            Runnable full = null;
+            synchronized (this) {
+                first[size] = firstOperand;
+                second[size] = secondOperand;
+                observers[size] = observer;
+                size++;
+                if (size == maxBatchSize) {
+                    full = take();
+                } else if (size == 1) {
+                    long batch = generation;
+                    timer.schedule(() -> expire(batch), lingerNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (full != null) {
+                full.run();
+            }
+        }
+
+        /**
+         * Exposes how many batches ran and how many calls they held.
+         */
+        void registerMetrics(MetricsRegistry registry) {
+            String labels = "method=\"" + name + "\"";
+            registry.registerCounter("calculator_batches_total", labels, batches::sum);
+            registry.registerCounter("calculator_batched_calls_total", labels, calls::sum);
+        }
+
+        // The timer of a batch that filled up first finds a newer generation and does nothing
+        private void expire(long batch) {
+            Runnable expired;
+            synchronized (this) {
+                if (generation != batch || size == 0) {
+                    return;
+                }
+                expired = take();
+            }
+            try {
+                executor.execute(expired);
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down; still answer the calls
+                expired.run();
+            }
+        }
+
+        private Runnable take() {
+            long[] batchFirst = first;
+            long[] batchSecond = second;
+            StreamObserver<RespT>[] batchObservers = observers;
+            int batchSize = size;
+            reset();
+            generation++;
+            return () -> {
+                batches.increment();
+                calls.add(batchSize);
+                evaluator.evaluate(batchFirst, batchSecond, batchObservers, batchSize);
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private void reset() {
+            first = new long[maxBatchSize];
+            second = new long[maxBatchSize];
+            observers = (StreamObserver<RespT>[]) new StreamObserver<?>[maxBatchSize];
+            size = 0;
+        }
+    }
+}
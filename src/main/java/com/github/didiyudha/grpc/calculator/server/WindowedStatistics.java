@@ -0,0 +1,78 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import com.proto.calculator.RunningStatisticsResponse;
+import com.proto.calculator.StatisticsWindow;
+
+/**
+ * Applies a {@link StatisticsWindow} to a stream of values and decides when a
+ * partial result is due.
+ */
+final class WindowedStatistics {
+
+    private final StatisticsWindow.Type type;
+    private final StreamStatistics statistics;
+    private final long emitEvery;
+    private long sinceEmit;
+
+    WindowedStatistics(StatisticsWindow window) {
+        this.type = window.getType();
+        long size = Integer.toUnsignedLong(window.getSize());
+        long emitEvery = Integer.toUnsignedLong(window.getEmitEvery());
+
+        switch (type) {
+            case CUMULATIVE:
+                this.statistics = new RunningStatistics();
+                this.emitEvery = emitEvery;
+                break;
+            case TUMBLING:
+                requirePositive(size);
+                this.statistics = new RunningStatistics();
+                this.emitEvery = size;
+                break;
+            case SLIDING:
+                requirePositive(size);
+                if (size > Integer.MAX_VALUE / 2) {
+                    throw new IllegalArgumentException("Sliding window is too large: " + size);
+                }
+                this.statistics = new SlidingWindowStatistics((int) size);
+                this.emitEvery = emitEvery > 0 ? emitEvery : size;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown window type: " + window.getTypeValue());
+        }
+    }
+
+    /**
+     * Adds a value and returns true when a partial result should be emitted.
+     */
+    boolean add(long value) {
+        statistics.add(value);
+        return emitEvery > 0 && ++sinceEmit == emitEvery;
+    }
+
+    /**
+     * Builds the current result and, for tumbling windows, starts the next window.
+     */
+    RunningStatisticsResponse emit(boolean complete) {
+        RunningStatisticsResponse response = RunningStatisticsResponse.newBuilder()
+                .setCount(statistics.getCount())
+                .setSum(statistics.getSum())
+                .setMean(statistics.getMean())
+                .setVariance(statistics.getVariance())
+                .setMin(statistics.getMin())
+                .setMax(statistics.getMax())
+                .setComplete(complete)
+                .build();
+        sinceEmit = 0;
+        if (type == StatisticsWindow.Type.TUMBLING) {
+            ((RunningStatistics) statistics).reset();
+        }
+        return response;
+    }
+
+    private static void requirePositive(long size) {
+        if (size == 0) {
+            throw new IllegalArgumentException("Window size is required for tumbling and sliding windows");
+        }
+    }
+}
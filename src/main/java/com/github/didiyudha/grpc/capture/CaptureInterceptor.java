@@ -0,0 +1,58 @@
+package com.github.didiyudha.grpc.capture;
+
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.health.v1.HealthGrpc;
+
+/**
+ * Appends every request a server receives to a {@link TrafficJournal}, with
+ * its method, call and time, and notes when each call's client finished or
+ * the call was cancelled. {@link TrafficReplay} sends the journal again.
+ * Health checks are not captured.
+ *
+ * Requests are written as the service is about to get them, on the thread
+ * that delivers them: one atomic add and one serialization into the mapped
+ * file per request.
+ */
+public final class CaptureInterceptor implements ServerInterceptor {
+
+    private final TrafficJournal journal;
+
+    public CaptureInterceptor(TrafficJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodDescriptor<ReqT, RespT> method = call.getMethodDescriptor();
+        if (HealthGrpc.SERVICE_NAME.equals(MethodDescriptor.extractFullServiceName(method.getFullMethodName()))) {
+            return next.startCall(call, headers);
+        }
+        int methodId = journal.methodId(method);
+        long callId = journal.nextCallId();
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+            @Override
+            public void onMessage(ReqT message) {
+                journal.message(methodId, callId, message);
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {
+                journal.halfClose(methodId, callId);
+                super.onHalfClose();
+            }
+
+            @Override
+            public void onCancel() {
+                journal.cancel(methodId, callId);
+                super.onCancel();
+            }
+        };
+    }
+}
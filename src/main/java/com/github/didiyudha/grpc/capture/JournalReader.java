@@ -0,0 +1,189 @@
+package com.github.didiyudha.grpc.capture;
+
+import io.grpc.MethodDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a {@link TrafficJournal} record by record through a read-only
+ * mapping. The reader is a cursor: {@link #next()} moves to the next event
+ * and the getters describe it. Payloads are views of the mapping, so nothing
+ * is copied until a request is sent again.
+ *
+ * The journal ends at the end of the file or at the first record with no
+ * length, one that was still being written.
+ */
+public final class JournalReader implements Closeable {
+
+    public enum Event {
+        /** A request; {@link #getPayload()} holds it serialized. */
+        MESSAGE,
+        /** The client finished sending. */
+        HALF_CLOSE,
+        /**
+         * The call ended before the server could complete it: the client
+         * cancelled it, its deadline passed or the connection broke. This
+         * happens before or after the client finished, e.g. when a client
+         * cancels a server stream.
+         */
+        CANCEL
+    }
+
+    private static final MethodDescriptor.MethodType[] METHOD_TYPES = MethodDescriptor.MethodType.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long startMillis;
+    private final List<String> methodNames = new ArrayList<>();
+    private final List<MethodDescriptor.MethodType> methodTypes = new ArrayList<>();
+    private int position = TrafficJournal.HEADER_BYTES;
+
+    private Event event;
+    private int methodId;
+    private long callId;
+    private long nanos;
+    private int payloadStart;
+    private int payloadEnd;
+
+    private JournalReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() < TrafficJournal.HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Not a traffic journal, size " + channel.size());
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt(0) != TrafficJournal.MAGIC) {
+            throw new IOException("Not a traffic journal");
+        }
+        if (buffer.getInt(4) != TrafficJournal.VERSION) {
+            throw new IOException("Unsupported traffic journal version " + buffer.getInt(4));
+        }
+        this.startMillis = buffer.getLong(8);
+    }
+
+    public static JournalReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new JournalReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wall clock time capture started, in epoch milliseconds.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Moves to the next event and returns it, or null at the end of the journal.
+     */
+    public Event next() {
+        while (position + 4 <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            int record = position + 4;
+            if (length <= 0 || length > buffer.limit() - record) {
+                break;
+            }
+            position = record + length;
+
+            byte type = buffer.get(record);
+            if (type == TrafficJournal.METHOD) {
+                readMethod(record, length);
+                continue;
+            }
+            methodId = buffer.getInt(record + 1);
+            callId = buffer.getLong(record + 5);
+            nanos = buffer.getLong(record + 13);
+            payloadStart = record + TrafficJournal.EVENT_BYTES;
+            payloadEnd = position;
+            switch (type) {
+                case TrafficJournal.MESSAGE:
+                    event = Event.MESSAGE;
+                    break;
+                case TrafficJournal.HALF_CLOSE:
+                    event = Event.HALF_CLOSE;
+                    break;
+                case TrafficJournal.CANCEL:
+                    event = Event.CANCEL;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record type " + type + " at " + (record - 4));
+            }
+            return event;
+        }
+        event = null;
+        return null;
+    }
+
+    private void readMethod(int record, int length) {
+        int id = buffer.getInt(record + 1);
+        byte[] name = new byte[length - 6];
+        ByteBuffer view = buffer.duplicate();
+        view.position(record + 6);
+        view.get(name);
+        while (methodNames.size() <= id) {
+            methodNames.add(null);
+            methodTypes.add(null);
+        }
+        methodNames.set(id, new String(name, StandardCharsets.UTF_8));
+        methodTypes.set(id, METHOD_TYPES[buffer.get(record + 5)]);
+    }
+
+    /**
+     * The method id of the current event, numbered from 0 in order of first use.
+     */
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public String getFullMethodName() {
+        return methodNames.get(methodId);
+    }
+
+    public MethodDescriptor.MethodType getMethodType() {
+        return methodTypes.get(methodId);
+    }
+
+    public long getCallId() {
+        return callId;
+    }
+
+    /**
+     * When the current event happened, in nanoseconds since capture started.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * The serialized request of a MESSAGE event, as a view of the mapping.
+     */
+    public ByteBuffer getPayload() {
+        if (event != Event.MESSAGE) {
+            throw new IllegalStateException("No message at the current event: " + event);
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payloadEnd).position(payloadStart);
+        return payload.slice();
+    }
+
+    /**
+     * Closes the file. The mapping is released once the reader is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
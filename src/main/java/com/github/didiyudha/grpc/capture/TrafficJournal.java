@@ -0,0 +1,264 @@
+package com.github.didiyudha.grpc.capture;
+
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import io.grpc.MethodDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An append-only journal of the messages a server received, in a file mapped
+ * into memory.
+ *
+ * The file starts with a {@value #HEADER_BYTES} byte header: a magic number,
+ * the format version and the wall clock time capture started, in epoch
+ * milliseconds. Records follow, each an int length and then that many bytes:
+ *
+ * <pre>
+ * METHOD      type, method id, method type, full method name in UTF-8
+ * MESSAGE     type, method id, call id, nanos since start, serialized request
+ * HALF_CLOSE  type, method id, call id, nanos since start
+ * CANCEL      type, method id, call id, nanos since start
+ * </pre>
+ *
+ * A METHOD record comes before the first record of its method. Call ids
+ * number the calls of one journal; HTTP/2 stream ids are per connection and
+ * not visible to interceptors.
+ *
+ * Appending serializes the request into an array reused by the thread,
+ * reserves space with one atomic add and copies the request into the
+ * mapping, without a system call.
+ * The length is written last, so readers stop at a record still being
+ * written, or at the tail of a journal whose process died. Once the journal
+ * is full further records are dropped and counted.
+ */
+public final class TrafficJournal implements Closeable {
+
+    static final int MAGIC = 0x4752504a;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    static final byte METHOD = 1;
+    static final byte MESSAGE = 2;
+    static final byte HALF_CLOSE = 3;
+    static final byte CANCEL = 4;
+
+    // Type, method id, call id and timestamp
+    static final int EVENT_BYTES = 1 + 4 + 8 + 8;
+
+    private static final int MAX_SCRATCH_BYTES = 64 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong position = new AtomicLong(HEADER_BYTES);
+    // Where the first record that did not fit would have started
+    private final AtomicLong firstDropped;
+    private final AtomicLong nextCallId = new AtomicLong();
+    private final AtomicInteger nextMethodId = new AtomicInteger();
+    private final ConcurrentMap<String, Integer> methodIds = new ConcurrentHashMap<>();
+    private final AtomicInteger writers = new AtomicInteger();
+    // Set by the first reservation that did not fit; every later one starts past it and fails too
+    private final AtomicBoolean full = new AtomicBoolean();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    private TrafficJournal(Path path, FileChannel channel, int capacity) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.firstDropped = new AtomicLong(capacity);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates or replaces the journal at {@code path}, mapping {@code capacity}
+     * bytes. The file is sparse until written and is truncated to the bytes
+     * used on {@link #close()}.
+     */
+    public static TrafficJournal create(Path path, int capacity) throws IOException {
+        if (capacity <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Journal capacity must be more than " + HEADER_BYTES + " bytes: " + capacity);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new TrafficJournal(path, channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Exposes the records written and dropped.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.registerCounter("grpc_server_capture_records_total", "", records::sum);
+        registry.registerCounter("grpc_server_capture_dropped_total", "", dropped::sum);
+    }
+
+    long nextCallId() {
+        return nextCallId.getAndIncrement();
+    }
+
+    /**
+     * Returns the id of {@code method}, writing its METHOD record on first use.
+     */
+    int methodId(MethodDescriptor<?, ?> method) {
+        Integer id = methodIds.get(method.getFullMethodName());
+        if (id != null) {
+            return id;
+        }
+        // Other threads wait for the record, so it precedes every record that uses the id
+        return methodIds.computeIfAbsent(method.getFullMethodName(), name -> {
+            int newId = nextMethodId.getAndIncrement();
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = begin(1 + 4 + 1 + utf8.length);
+            if (record != null) {
+                record.put(METHOD).putInt(newId).put((byte) method.getType().ordinal()).put(utf8);
+                commit(record);
+            }
+            return newId;
+        });
+    }
+
+    /**
+     * Appends a request. Messages that are not protobuf messages are dropped,
+     * as is everything once the journal is full or closed.
+     */
+    void message(int methodId, long callId, Object message) {
+        // Checked again by begin(); this spares dropped requests their serialization
+        if (!(message instanceof MessageLite) || closed || full.get()) {
+            dropped.increment();
+            return;
+        }
+        MessageLite request = (MessageLite) message;
+        int size = request.getSerializedSize();
+        byte[] bytes = serialize(request, size);
+        ByteBuffer record = begin(EVENT_BYTES + size);
+        if (record != null) {
+            record.put(MESSAGE).putInt(methodId).putLong(callId).putLong(System.nanoTime() - startNanos)
+                    .put(bytes, 0, size);
+            commit(record);
+        }
+    }
+
+    // Into a reused array, as protobuf's encoder for direct buffers relies on JDK internals
+    private static byte[] serialize(MessageLite message, int size) {
+        if (size > MAX_SCRATCH_BYTES) {
+            return message.toByteArray();
+        }
+        byte[] bytes = SCRATCH.get();
+        if (bytes.length < size) {
+            bytes = new byte[Math.max(size, 2 * bytes.length)];
+            SCRATCH.set(bytes);
+        }
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes, 0, size);
+        try {
+            message.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Serializing to an array cannot fail", e);
+        }
+        return bytes;
+    }
+
+    void halfClose(int methodId, long callId) {
+        event(HALF_CLOSE, methodId, callId);
+    }
+
+    void cancel(int methodId, long callId) {
+        event(CANCEL, methodId, callId);
+    }
+
+    private void event(byte type, int methodId, long callId) {
+        ByteBuffer record = begin(EVENT_BYTES);
+        if (record != null) {
+            record.put(type).putInt(methodId).putLong(callId).putLong(System.nanoTime() - startNanos);
+            commit(record);
+        }
+    }
+
+    /**
+     * Reserves a record of {@code length} bytes and returns a view marked and
+     * positioned after its length, or null when the journal is closed or
+     * full. A non-null view must be passed to {@link #commit(ByteBuffer)}.
+     */
+    private ByteBuffer begin(int length) {
+        writers.incrementAndGet();
+        if (closed) {
+            writers.decrementAndGet();
+            dropped.increment();
+            return null;
+        }
+        long offset = position.getAndAdd(4 + length);
+        if (offset + 4 + length > capacity) {
+            firstDropped.accumulateAndGet(offset, Math::min);
+            writers.decrementAndGet();
+            dropped.increment();
+            if (full.compareAndSet(false, true)) {
+                System.out.println("Capture journal " + path + " is full, dropping further records");
+            }
+            return null;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.limit((int) offset + 4 + length).position((int) offset + 4);
+        record.mark();
+        return record;
+    }
+
+    private void commit(ByteBuffer record) {
+        int end = record.position();
+        record.reset();
+        int start = record.position();
+        buffer.putInt(start - 4, end - start);
+        records.increment();
+        writers.decrementAndGet();
+    }
+
+    /**
+     * Stops appending, waits for appends in flight, flushes the mapping and
+     * truncates the file to the records written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while (writers.get() > 0) {
+            Thread.yield();
+        }
+        buffer.force();
+        long used = Math.min(position.get(), firstDropped.get());
+        channel.truncate(used);
+        channel.close();
+        System.out.println("Capture journal " + path + ": " + records.sum() + " records, "
+                + used + " bytes, " + dropped.sum() + " dropped");
+    }
+}
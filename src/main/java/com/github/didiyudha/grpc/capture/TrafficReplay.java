@@ -0,0 +1,359 @@
+package com.github.didiyudha.grpc.capture;
+
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.client.TargetResolver;
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+import com.github.didiyudha.grpc.host.MultiServiceServer;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the calls of a {@link TrafficJournal} to a server again: every call
+ * is started, fed its captured requests, half-closed or cancelled at the
+ * time it was captured, counted from the first event and divided by
+ * {@code speed}. A speed of 0 sends
+ * everything as fast as possible.
+ *
+ * Calls are generic, with the method names and types from the journal and
+ * requests passed through as bytes, so any service can be replayed without
+ * its stubs. Requests are streamed to the transport straight from the
+ * mapping. Responses are read and discarded. The report shows the calls,
+ * errors and latency percentiles per method, and how far the replay fell
+ * behind the captured schedule.
+ */
+public final class TrafficReplay {
+
+    static final String USAGE = "Usage: TrafficReplay --journal=file [options]\n"
+            + "  --journal=file         journal written by a server with capture.file set\n"
+            + "  --target=host:port,... servers to replay against, as for the load generator (default localhost:50055)\n"
+            + "                         inprocess:name hosts the services in this JVM\n"
+            + "  --ca=file              trust this CA and use TLS (default plaintext)\n"
+            + "  --channels=n           connections per target (default 1)\n"
+            + "  --speed=x              replay x times faster than captured, 0 as fast as possible (default 1)\n";
+
+    private static final MethodDescriptor.Marshaller<ByteBuffer> REQUESTS = new MethodDescriptor.Marshaller<ByteBuffer>() {
+        @Override
+        public InputStream stream(ByteBuffer value) {
+            return new ByteBufferInputStream(value.duplicate());
+        }
+
+        @Override
+        public ByteBuffer parse(InputStream stream) {
+            throw new UnsupportedOperationException("Replayed requests are only sent");
+        }
+    };
+
+    private static final MethodDescriptor.Marshaller<Void> RESPONSES = new MethodDescriptor.Marshaller<Void>() {
+        @Override
+        public InputStream stream(Void value) {
+            throw new UnsupportedOperationException("Replayed responses are only received");
+        }
+
+        @Override
+        public Void parse(InputStream stream) {
+            try {
+                while (stream.skip(Long.MAX_VALUE) > 0) {
+                    // Discard
+                }
+                return null;
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Could not read response").withCause(e).asRuntimeException();
+            }
+        }
+    };
+
+    private final ChannelPool pool;
+    private final double speed;
+    private final List<Method> methods = new ArrayList<>();
+    private final Map<Long, ReplayedCall> calls = new ConcurrentHashMap<>();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private long maxLagNanos;
+
+    public TrafficReplay(ChannelPool pool, double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed must not be negative: " + speed);
+        }
+        this.pool = pool;
+        this.speed = speed;
+    }
+
+    /**
+     * Replays {@code journal} from the current event on and waits up to 30
+     * seconds for the calls still running at its end.
+     */
+    public void run(JournalReader journal) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long firstNanos = -1;
+        JournalReader.Event event;
+        while ((event = journal.next()) != null) {
+            // The schedule starts at the first event, not at the idle start of capture
+            if (firstNanos < 0) {
+                firstNanos = journal.getNanos();
+            }
+            if (speed > 0) {
+                waitUntil(startNanos + (long) ((journal.getNanos() - firstNanos) / speed));
+            }
+            ReplayedCall call = calls.get(journal.getCallId());
+            switch (event) {
+                case MESSAGE:
+                    if (call == null) {
+                        call = start(journal);
+                    }
+                    call.call.sendMessage(journal.getPayload());
+                    break;
+                case HALF_CLOSE:
+                    // A client stream may end without a message
+                    if (call == null) {
+                        call = start(journal);
+                    }
+                    call.call.halfClose();
+                    call.halfClosed = true;
+                    if (call.closed) {
+                        calls.remove(call.callId);
+                    }
+                    break;
+                case CANCEL:
+                    if (call != null) {
+                        call.call.cancel("Cancelled in the captured traffic", null);
+                        calls.remove(call.callId);
+                    }
+                    break;
+                default:
+                    throw new AssertionError(event);
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (finished.sum() < started.sum() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (finished.sum() < started.sum()) {
+            System.out.println((started.sum() - finished.sum()) + " calls did not complete within 30 seconds of the end of the journal");
+        }
+        report(System.nanoTime() - startNanos);
+    }
+
+    private void waitUntil(long dueNanos) {
+        long wait;
+        while ((wait = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        maxLagNanos = Math.max(maxLagNanos, -wait);
+    }
+
+    private ReplayedCall start(JournalReader journal) {
+        int id = journal.getMethodId();
+        while (methods.size() <= id) {
+            methods.add(null);
+        }
+        Method method = methods.get(id);
+        if (method == null) {
+            method = new Method(MethodDescriptor.<ByteBuffer, Void>newBuilder()
+                    .setType(journal.getMethodType())
+                    .setFullMethodName(journal.getFullMethodName())
+                    .setRequestMarshaller(REQUESTS)
+                    .setResponseMarshaller(RESPONSES)
+                    .build());
+            methods.set(id, method);
+        }
+        ReplayedCall call = new ReplayedCall(journal.getCallId(), method,
+                pool.newCall(method.descriptor, CallOptions.DEFAULT));
+        calls.put(call.callId, call);
+        started.increment();
+        call.call.start(call, new Metadata());
+        call.call.request(Integer.MAX_VALUE);
+        return call;
+    }
+
+    private void report(long elapsedNanos) {
+        System.out.println();
+        System.out.printf("Replayed %d calls in %.1f s, at most %.1f ms behind the captured schedule%n",
+                started.sum(), elapsedNanos / 1e9, maxLagNanos / 1e6);
+        System.out.printf("%-54s %10s %8s %10s %10s %10s %10s %10s%n",
+                "method", "calls", "errors", "cancelled", "p50 us", "p90 us", "p99 us", "max us");
+        for (Method method : methods) {
+            if (method == null) {
+                continue;
+            }
+            Histogram histogram = method.latency.getIntervalHistogram();
+            System.out.printf("%-54s %10d %8d %10d %10.1f %10.1f %10.1f %10.1f%n",
+                    method.descriptor.getFullMethodName(),
+                    histogram.getTotalCount(),
+                    method.errors.sum(),
+                    method.cancelled.sum(),
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    private static final class Method {
+
+        final MethodDescriptor<ByteBuffer, Void> descriptor;
+        final Recorder latency = new Recorder(3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder cancelled = new LongAdder();
+
+        Method(MethodDescriptor<ByteBuffer, Void> descriptor) {
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * One call in flight. It is driven from the replay thread only, as
+     * {@link ClientCall} requires; the listener runs on the channel's executor.
+     */
+    private final class ReplayedCall extends ClientCall.Listener<Void> {
+
+        final long callId;
+        final Method method;
+        final ClientCall<ByteBuffer, Void> call;
+        final long startNanos = System.nanoTime();
+        // Kept until both are set or the call is cancelled, so late events still find the call
+        volatile boolean halfClosed;
+        volatile boolean closed;
+
+        ReplayedCall(long callId, Method method, ClientCall<ByteBuffer, Void> call) {
+            this.callId = callId;
+            this.method = method;
+            this.call = call;
+        }
+
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+            method.latency.recordValue(System.nanoTime() - startNanos);
+            if (status.getCode() == Status.Code.CANCELLED) {
+                method.cancelled.increment();
+            } else if (!status.isOk()) {
+                method.errors.increment();
+            }
+            closed = true;
+            if (halfClosed) {
+                calls.remove(callId);
+            }
+            finished.increment();
+        }
+    }
+
+    /**
+     * A request read from the journal's mapping, whose length the framer can
+     * see up front.
+     */
+    private static final class ByteBufferInputStream extends InputStream implements KnownLength {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String journalFile = null;
+        String target = "localhost:50055";
+        String caFile = null;
+        int channels = 1;
+        double speed = 1;
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Unrecognized argument: " + arg + "\n" + USAGE);
+                System.exit(1);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "journal":
+                    journalFile = value;
+                    break;
+                case "target":
+                    target = value;
+                    break;
+                case "ca":
+                    caFile = value;
+                    break;
+                case "channels":
+                    channels = Integer.parseInt(value);
+                    break;
+                case "speed":
+                    speed = Double.parseDouble(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: --" + name + "\n" + USAGE);
+                    System.exit(1);
+            }
+        }
+        if (journalFile == null) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        for (String resolved : TargetResolver.forSpec(target).resolve()) {
+            String inProcessName = TargetResolver.inProcessName(resolved);
+            if (inProcessName != null) {
+                MultiServiceServer.startInProcess(inProcessName);
+            }
+        }
+        ChannelPool.Builder builder = ChannelPool.newBuilder(target)
+                .connectionsPerTarget(channels)
+                .compressorRegistry(CompressionPolicy.compressorRegistry())
+                .decompressorRegistry(CompressionPolicy.decompressorRegistry());
+        if (caFile != null) {
+            builder.sslContext(GrpcSslContexts.forClient().trustManager(new File(caFile)).build());
+        }
+        ChannelPool pool = builder.build();
+        try (JournalReader journal = JournalReader.open(Paths.get(journalFile))) {
+            System.out.println("Replaying " + journalFile + ", captured at " + new Date(journal.getStartMillis())
+                    + ", against " + target + (speed > 0 ? " at " + speed + "x" : " as fast as possible"));
+            new TrafficReplay(pool, speed).run(journal);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
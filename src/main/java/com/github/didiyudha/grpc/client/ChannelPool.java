@@ -0,0 +1,439 @@
+package com.github.didiyudha.grpc.client;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A channel backed by several HTTP/2 connections, to one server or to many.
+ *
+ * Every target returned by the {@link TargetResolver} gets
+ * {@code connectionsPerTarget} Netty channels, each with its own connection
+ * and event loop, so the pool is not capped by one connection's
+ * concurrent-stream limit or one event loop. Each call is placed on one of
+ * them by the {@link Policy}. A pool is a drop-in {@link ManagedChannel} for
+ * the generated stubs.
+ *
+ * An {@code inprocess:<name>} target is reached through an in-process channel
+ * instead: no socket, and protobuf messages are handed over by reference
+ * rather than serialized. Its responses are delivered on the service's thread,
+ * so async callers must not block in their observers.
+ */
+public final class ChannelPool extends ManagedChannel {
+
+    public enum Policy {
+        /** Rotate through the connections. */
+        ROUND_ROBIN,
+        /** Pick the connection with the fewest calls in flight, which steers load away from slow servers. */
+        LEAST_OUTSTANDING
+    }
+
+    private final TargetResolver resolver;
+    private final Builder settings;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService refresher;
+
+    private volatile Connection[] connections;
+    // Drained by a refresh and not yet terminated; guarded by this
+    private final List<ManagedChannel> retired = new ArrayList<>();
+    private boolean shutdown;
+
+    private ChannelPool(Builder builder) {
+        this.resolver = builder.resolver;
+        this.settings = builder.copy();
+        this.connections = connect(resolver.resolve(), new Connection[0]);
+
+        if (builder.refreshIntervalNanos > 0 && !resolver.isStatic()) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "channel-pool-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshQuietly,
+                    builder.refreshIntervalNanos, builder.refreshIntervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    /**
+     * @param target a {@link TargetResolver} specification, e.g. {@code localhost:50055}
+     */
+    public static Builder newBuilder(String target) {
+        return new Builder(TargetResolver.forSpec(target));
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+                                                         CallOptions callOptions) {
+        Connection connection = pick();
+        ClientCall<ReqT, RespT> call = connection.channel.newCall(method, callOptions);
+        if (settings.policy != Policy.LEAST_OUTSTANDING) {
+            return call;
+        }
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                connection.outstanding.incrementAndGet();
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            connection.outstanding.decrementAndGet();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                } catch (RuntimeException e) {
+                    connection.outstanding.decrementAndGet();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private Connection pick() {
+        Connection[] current = connections;
+        if (current.length == 1) {
+            return current[0];
+        }
+        if (settings.policy == Policy.ROUND_ROBIN) {
+            return current[(next.getAndIncrement() & Integer.MAX_VALUE) % current.length];
+        }
+
+        // Start the scan at a random connection so ties do not all land on the first one
+        int start = ThreadLocalRandom.current().nextInt(current.length);
+        Connection best = current[start];
+        for (int i = 1; i < current.length && best.outstanding.get() > 0; i++) {
+            Connection candidate = current[(start + i) % current.length];
+            if (candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Re-resolves the targets, opening connections to new ones and draining
+     * connections to targets that are gone. Calls already in flight on a
+     * drained connection complete normally.
+     */
+    public synchronized void refresh() {
+        if (shutdown) {
+            return;
+        }
+        connections = connect(resolver.resolve(), connections);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            System.out.println("Keeping current targets, refresh of " + resolver + " failed: " + e);
+        }
+    }
+
+    private Connection[] connect(List<String> targets, Connection[] previous) {
+        Map<String, List<Connection>> existing = new HashMap<>();
+        for (Connection connection : previous) {
+            existing.computeIfAbsent(connection.target, t -> new ArrayList<>()).add(connection);
+        }
+
+        List<Connection> result = new ArrayList<>();
+        for (String target : targets) {
+            List<Connection> kept = existing.remove(target);
+            if (kept != null) {
+                result.addAll(kept);
+                continue;
+            }
+            for (int i = 0; i < settings.connectionsPerTarget; i++) {
+                result.add(new Connection(target, newChannel(target)));
+            }
+        }
+
+        // Drained connections are only kept until they terminate
+        retired.removeIf(ManagedChannel::isTerminated);
+        for (List<Connection> removed : existing.values()) {
+            for (Connection connection : removed) {
+                connection.channel.shutdown();
+                retired.add(connection.channel);
+            }
+        }
+        return result.toArray(new Connection[0]);
+    }
+
+    private ManagedChannel newChannel(String target) {
+        String inProcessName = TargetResolver.inProcessName(target);
+        if (inProcessName != null) {
+            // Security, keepalive and compression have no meaning without a connection
+            return InProcessChannelBuilder.forName(inProcessName)
+                    .directExecutor()
+                    .build();
+        }
+        NettyChannelBuilder builder = NettyChannelBuilder.forTarget(target);
+        if (settings.sslContext != null) {
+            builder.sslContext(settings.sslContext);
+        } else {
+            builder.usePlaintext();
+        }
+        if (settings.keepAliveTimeNanos > 0) {
+            builder.keepAliveTime(settings.keepAliveTimeNanos, TimeUnit.NANOSECONDS)
+                    .keepAliveWithoutCalls(settings.keepAliveWithoutCalls);
+        }
+        if (settings.keepAliveTimeoutNanos > 0) {
+            builder.keepAliveTimeout(settings.keepAliveTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        if (settings.idleTimeoutNanos > 0) {
+            builder.idleTimeout(settings.idleTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        if (settings.compressorRegistry != null) {
+            builder.compressorRegistry(settings.compressorRegistry);
+        }
+        if (settings.decompressorRegistry != null) {
+            builder.decompressorRegistry(settings.decompressorRegistry);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Calls in flight on each connection, in pool order. Only tracked by {@link Policy#LEAST_OUTSTANDING}.
+     */
+    public int[] getOutstanding() {
+        Connection[] current = connections;
+        int[] outstanding = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            outstanding[i] = current[i].outstanding.get();
+        }
+        return outstanding;
+    }
+
+    public int size() {
+        return connections.length;
+    }
+
+    // Channels drained by a refresh that were not yet terminated at the last one
+    synchronized int retiredCount() {
+        return retired.size();
+    }
+
+    /**
+     * The authority of the first connection. Each call uses the authority of the connection it is placed on.
+     */
+    @Override
+    public String authority() {
+        return connections[0].authority;
+    }
+
+    @Override
+    public synchronized ChannelPool shutdown() {
+        shutdown = true;
+        if (refresher != null) {
+            refresher.shutdown();
+        }
+        for (ManagedChannel channel : allChannels()) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized ChannelPool shutdownNow() {
+        shutdown = true;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        for (ManagedChannel channel : allChannels()) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        for (ManagedChannel channel : allChannels()) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<ManagedChannel> channels;
+        synchronized (this) {
+            channels = allChannels();
+        }
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return isTerminated();
+    }
+
+    private List<ManagedChannel> allChannels() {
+        List<ManagedChannel> channels = new ArrayList<>(retired);
+        for (Connection connection : connections) {
+            channels.add(connection.channel);
+        }
+        return channels;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelPool{targets=" + resolver
+                + ", connections=" + connections.length
+                + ", policy=" + settings.policy + "}";
+    }
+
+    private static final class Connection {
+        final String target;
+        final ManagedChannel channel;
+        // Read up front, a channel that a refresh shut down has none
+        final String authority;
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        Connection(String target, ManagedChannel channel) {
+            this.target = target;
+            this.channel = channel;
+            this.authority = channel.authority();
+        }
+    }
+
+    public static final class Builder {
+        private final TargetResolver resolver;
+        private int connectionsPerTarget = 1;
+        private Policy policy = Policy.ROUND_ROBIN;
+        private SslContext sslContext;
+        private long keepAliveTimeNanos;
+        private long keepAliveTimeoutNanos;
+        private boolean keepAliveWithoutCalls;
+        private long idleTimeoutNanos;
+        private long refreshIntervalNanos;
+        private CompressorRegistry compressorRegistry;
+        private DecompressorRegistry decompressorRegistry;
+
+        private Builder(TargetResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        public Builder connectionsPerTarget(int connectionsPerTarget) {
+            if (connectionsPerTarget <= 0) {
+                throw new IllegalArgumentException("connectionsPerTarget must be positive: " + connectionsPerTarget);
+            }
+            this.connectionsPerTarget = connectionsPerTarget;
+            return this;
+        }
+
+        public Builder policy(Policy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Use TLS with this context; connections are plaintext otherwise.
+         */
+        public Builder sslContext(SslContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Ping idle connections this often so dead peers and silently dropped NAT entries are noticed.
+         */
+        public Builder keepAliveTime(long time, TimeUnit unit) {
+            this.keepAliveTimeNanos = unit.toNanos(time);
+            return this;
+        }
+
+        public Builder keepAliveTimeout(long timeout, TimeUnit unit) {
+            this.keepAliveTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Also ping connections without calls in flight; the server must permit it.
+         */
+        public Builder keepAliveWithoutCalls(boolean enable) {
+            this.keepAliveWithoutCalls = enable;
+            return this;
+        }
+
+        /**
+         * Close connections that have had no calls for this long; they reconnect on the next call.
+         */
+        public Builder idleTimeout(long timeout, TimeUnit unit) {
+            this.idleTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Re-read {@code file:} targets this often. Static targets never change.
+         */
+        public Builder refreshInterval(long interval, TimeUnit unit) {
+            this.refreshIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Encodings available to requests, e.g. to send lz4. gRPC's built-in ones otherwise.
+         */
+        public Builder compressorRegistry(CompressorRegistry registry) {
+            this.compressorRegistry = registry;
+            return this;
+        }
+
+        /**
+         * Encodings accepted on responses and advertised to servers. gRPC's built-in ones otherwise.
+         */
+        public Builder decompressorRegistry(DecompressorRegistry registry) {
+            this.decompressorRegistry = registry;
+            return this;
+        }
+
+        private Builder copy() {
+            Builder copy = new Builder(resolver);
+            copy.connectionsPerTarget = connectionsPerTarget;
+            copy.policy = policy;
+            copy.sslContext = sslContext;
+            copy.keepAliveTimeNanos = keepAliveTimeNanos;
+            copy.keepAliveTimeoutNanos = keepAliveTimeoutNanos;
+            copy.keepAliveWithoutCalls = keepAliveWithoutCalls;
+            copy.idleTimeoutNanos = idleTimeoutNanos;
+            copy.refreshIntervalNanos = refreshIntervalNanos;
+            copy.compressorRegistry = compressorRegistry;
+            copy.decompressorRegistry = decompressorRegistry;
+            return copy;
+        }
+
+        public ChannelPool build() {
+            return new ChannelPool(this);
+        }
+    }
+}
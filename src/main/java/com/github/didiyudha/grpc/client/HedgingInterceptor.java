@@ -0,0 +1,502 @@
+package com.github.didiyudha.grpc.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedges and retries idempotent unary calls, following the semantics of the
+ * gRPC service config {@code hedgingPolicy} and {@code retryThrottling},
+ * which the grpc-java release this project uses does not implement yet.
+ *
+ * If an attempt has not answered within the hedging delay, another attempt
+ * is sent and the first response wins; the others are cancelled. The delay is
+ * either fixed or follows a percentile of the method's recent call latency,
+ * timed from the first attempt, so only the slowest few percent of calls are
+ * duplicated. Attempts that fail with a retryable code, UNAVAILABLE by
+ * default, are retried with jittered exponential backoff. Every attempt after the first needs the shared retry
+ * budget: each retryable failure costs a token, each success earns back
+ * {@code tokenRatio}, and extra attempts stop while the bucket is at or
+ * below half, so retries cannot amplify an overload.
+ */
+public final class HedgingInterceptor implements ClientInterceptor {
+
+    private static final long LATENCY_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_LATENCY_SAMPLES = 100;
+
+    private final Map<String, LatencyTracker> methods;
+    private final int maxAttempts;
+    private final double hedgingPercentile;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final Set<Status.Code> retryableCodes;
+    private final RetryThrottle throttle;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    private HedgingInterceptor(Builder builder) {
+        this.methods = new HashMap<>();
+        for (String method : builder.methods) {
+            methods.put(method, new LatencyTracker(builder.hedgingDelayNanos));
+        }
+        this.maxAttempts = builder.maxAttempts;
+        this.hedgingPercentile = builder.hedgingPercentile;
+        this.initialBackoffNanos = builder.initialBackoffNanos;
+        this.maxBackoffNanos = builder.maxBackoffNanos;
+        this.retryableCodes = EnumSet.copyOf(builder.retryableCodes);
+        this.throttle = new RetryThrottle(builder.maxTokens, builder.tokenRatio);
+        this.scheduler = builder.scheduler != null ? builder.scheduler : SharedTimer.INSTANCE;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        LatencyTracker latency = methods.get(method.getFullMethodName());
+        if (latency == null || method.getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.newCall(method, callOptions);
+        }
+        return new HedgingCall<>(method, callOptions, next, latency);
+    }
+
+    /** Attempts sent because an earlier one was slower than the hedging delay. */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /** Attempts sent because an earlier one failed with a retryable code. */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /** Hedges and retries skipped because the retry budget was exhausted. */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hedges=" + getHedges() + ", retries=" + getRetries() + ", throttled=" + getThrottled();
+    }
+
+    /**
+     * One logical call. Attempts are started, and the winner chosen, under the
+     * instance lock; the winner's response is replayed to the caller's listener
+     * outside it.
+     */
+    private final class HedgingCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final MethodDescriptor<ReqT, RespT> method;
+        private final CallOptions callOptions;
+        private final Channel next;
+        private final LatencyTracker latency;
+
+        private Listener<RespT> listener;
+        private Metadata headers;
+        private ReqT message;
+
+        private final List<Attempt> inFlight = new ArrayList<>();
+        private int started = 0;
+        private long startNanos;
+        private boolean committed = false;
+        private ScheduledFuture<?> timer;
+
+        HedgingCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next,
+                    LatencyTracker latency) {
+            this.method = method;
+            this.callOptions = callOptions;
+            this.next = next;
+            this.latency = latency;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            this.listener = responseListener;
+            this.headers = headers;
+        }
+
+        @Override
+        public void request(int numMessages) {
+            // Every attempt requests its own response
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            if (this.message != null) {
+                throw new IllegalStateException("Unary call already has a request message");
+            }
+            this.message = message;
+        }
+
+        @Override
+        public void halfClose() {
+            startAttempt();
+        }
+
+        @Override
+        public void cancel(String cancelMessage, Throwable cause) {
+            List<Attempt> toCancel;
+            synchronized (this) {
+                if (committed) {
+                    return;
+                }
+                committed = true;
+                cancelTimer();
+                toCancel = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            for (Attempt attempt : toCancel) {
+                attempt.call.cancel(cancelMessage, cause);
+            }
+            Status status = Status.CANCELLED.withDescription(cancelMessage).withCause(cause);
+            Executor executor = callOptions.getExecutor() != null ? callOptions.getExecutor() : scheduler;
+            executor.execute(() -> {
+                if (listener != null) {
+                    listener.onClose(status, new Metadata());
+                }
+            });
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        private synchronized void startAttempt() {
+            if (committed || started >= maxAttempts) {
+                return;
+            }
+            if (started == 0) {
+                startNanos = System.nanoTime();
+            }
+            started++;
+            Attempt attempt = new Attempt(next.newCall(method, callOptions));
+            inFlight.add(attempt);
+
+            Metadata attemptHeaders = new Metadata();
+            attemptHeaders.merge(headers);
+            attempt.call.start(attempt, attemptHeaders);
+            attempt.call.request(2);
+            attempt.call.sendMessage(message);
+            attempt.call.halfClose();
+
+            long delay = latency.getHedgingDelayNanos();
+            if (delay > 0 && started < maxAttempts && !committed) {
+                cancelTimer();
+                timer = scheduler.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized void hedge() {
+            if (committed || started >= maxAttempts) {
+                return;
+            }
+            if (!throttle.allowsRetry()) {
+                throttled.increment();
+                return;
+            }
+            hedges.increment();
+            startAttempt();
+        }
+
+        private synchronized void retry() {
+            if (committed || started >= maxAttempts) {
+                return;
+            }
+            retries.increment();
+            startAttempt();
+        }
+
+        private void onAttemptClosed(Attempt attempt, Status status, Metadata trailers) {
+            List<Attempt> toCancel;
+            synchronized (this) {
+                inFlight.remove(attempt);
+                if (committed) {
+                    return;
+                }
+
+                boolean retryable = retryableCodes.contains(status.getCode());
+                if (status.isOk()) {
+                    throttle.onSuccess();
+                    // From the first attempt, so a slow original beaten by a hedge still counts as slow
+                    latency.record(System.nanoTime() - startNanos);
+                } else if (retryable) {
+                    throttle.onFailure();
+                }
+
+                if (retryable && !inFlight.isEmpty()) {
+                    // A hedge is still running and may yet succeed
+                    return;
+                }
+                if (retryable && started < maxAttempts) {
+                    if (throttle.allowsRetry()) {
+                        cancelTimer();
+                        timer = scheduler.schedule(this::retry, backoffNanos(started), TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    throttled.increment();
+                }
+
+                committed = true;
+                cancelTimer();
+                toCancel = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+
+            for (Attempt other : toCancel) {
+                other.call.cancel("Another attempt completed", null);
+            }
+            if (attempt.headers != null) {
+                listener.onHeaders(attempt.headers);
+            }
+            if (attempt.response != null) {
+                listener.onMessage(attempt.response);
+            }
+            listener.onClose(status, trailers);
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+
+        private final class Attempt extends ClientCall.Listener<RespT> {
+            final ClientCall<ReqT, RespT> call;
+            Metadata headers;
+            RespT response;
+
+            Attempt(ClientCall<ReqT, RespT> call) {
+                this.call = call;
+            }
+
+            @Override
+            public void onHeaders(Metadata headers) {
+                this.headers = headers;
+            }
+
+            @Override
+            public void onMessage(RespT message) {
+                this.response = message;
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                onAttemptClosed(this, status, trailers);
+            }
+        }
+    }
+
+    // Full jitter: a random wait up to the exponentially growing cap
+    private long backoffNanos(int attempt) {
+        long cap = initialBackoffNanos;
+        for (int i = 1; i < attempt && cap < maxBackoffNanos; i++) {
+            cap *= 2;
+        }
+        cap = Math.min(cap, maxBackoffNanos);
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap) : 0;
+    }
+
+    /**
+     * The hedging delay of one method. With a percentile configured, the delay
+     * follows that percentile of the successful calls seen since the last
+     * update, once enough have been seen; until then the configured delay is used.
+     */
+    private final class LatencyTracker {
+        private final Recorder recorder = new Recorder(2);
+        private Histogram window;
+        private long lastUpdateNanos = System.nanoTime();
+        private volatile long hedgingDelayNanos;
+
+        LatencyTracker(long initialDelayNanos) {
+            this.hedgingDelayNanos = initialDelayNanos;
+        }
+
+        void record(long nanos) {
+            if (hedgingPercentile > 0) {
+                recorder.recordValue(nanos);
+            }
+        }
+
+        long getHedgingDelayNanos() {
+            if (hedgingPercentile > 0 && System.nanoTime() - lastUpdateNanos >= LATENCY_UPDATE_INTERVAL_NANOS) {
+                update();
+            }
+            return hedgingDelayNanos;
+        }
+
+        private synchronized void update() {
+            long now = System.nanoTime();
+            if (now - lastUpdateNanos < LATENCY_UPDATE_INTERVAL_NANOS) {
+                return;
+            }
+            lastUpdateNanos = now;
+            Histogram interval = recorder.getIntervalHistogram();
+            if (window == null) {
+                window = interval;
+            } else {
+                window.add(interval);
+            }
+            if (window.getTotalCount() >= MIN_LATENCY_SAMPLES) {
+                hedgingDelayNanos = Math.max(1, window.getValueAtPercentile(hedgingPercentile));
+                window = null;
+            }
+        }
+    }
+
+    /**
+     * The retry budget from the gRPC {@code retryThrottling} policy, counted in thousandths of a token.
+     */
+    private static final class RetryThrottle {
+        private final int maxTokens;
+        private final int tokenRatio;
+        private final AtomicInteger tokens;
+
+        RetryThrottle(int maxTokens, double tokenRatio) {
+            this.maxTokens = maxTokens * 1000;
+            this.tokenRatio = (int) (tokenRatio * 1000);
+            this.tokens = new AtomicInteger(this.maxTokens);
+        }
+
+        boolean allowsRetry() {
+            return tokens.get() > maxTokens / 2;
+        }
+
+        void onFailure() {
+            tokens.updateAndGet(t -> Math.max(0, t - 1000));
+        }
+
+        void onSuccess() {
+            if (tokens.get() < maxTokens) {
+                tokens.updateAndGet(t -> Math.min(maxTokens, t + tokenRatio));
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final List<String> methods = new ArrayList<>();
+        private int maxAttempts = 2;
+        private long hedgingDelayNanos;
+        private double hedgingPercentile;
+        private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(50);
+        private long maxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        private Set<Status.Code> retryableCodes = EnumSet.of(Status.Code.UNAVAILABLE);
+        private int maxTokens = 10;
+        private double tokenRatio = 0.1;
+        private ScheduledExecutorService scheduler;
+
+        private Builder() {
+        }
+
+        /**
+         * Applies the policy to these methods; only list idempotent unary methods.
+         */
+        public Builder forMethods(MethodDescriptor<?, ?>... methods) {
+            for (MethodDescriptor<?, ?> method : methods) {
+                this.methods.add(method.getFullMethodName());
+            }
+            return this;
+        }
+
+        /** {@code maxAttempts}: the original call plus hedges and retries. */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * {@code hedgingDelay}: wait this long before sending the next attempt. 0 disables hedging,
+         * leaving only retries. With {@link #hedgingPercentile} this is the delay until enough latency
+         * samples have been seen.
+         */
+        public Builder hedgingDelay(long delay, TimeUnit unit) {
+            this.hedgingDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Derive the hedging delay from this percentile of recent successful call latency, e.g. 95. 0 keeps it fixed.
+         */
+        public Builder hedgingPercentile(double percentile) {
+            if (percentile < 0 || percentile >= 100) {
+                throw new IllegalArgumentException("percentile must be in [0, 100): " + percentile);
+            }
+            this.hedgingPercentile = percentile;
+            return this;
+        }
+
+        /** {@code initialBackoff} and {@code maxBackoff} of the retry policy, doubling in between. */
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            this.initialBackoffNanos = unit.toNanos(initial);
+            this.maxBackoffNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /** {@code retryableStatusCodes}, UNAVAILABLE by default. */
+        public Builder retryableCodes(Status.Code... codes) {
+            this.retryableCodes = EnumSet.noneOf(Status.Code.class);
+            for (Status.Code code : codes) {
+                retryableCodes.add(code);
+            }
+            return this;
+        }
+
+        /** {@code retryThrottling}: {@code maxTokens} and {@code tokenRatio}, 10 and 0.1 by default. */
+        public Builder retryThrottling(int maxTokens, double tokenRatio) {
+            if (maxTokens <= 0 || tokenRatio <= 0) {
+                throw new IllegalArgumentException("maxTokens and tokenRatio must be positive");
+            }
+            this.maxTokens = maxTokens;
+            this.tokenRatio = tokenRatio;
+            return this;
+        }
+
+        /** Timer for hedging delays and backoff; defaults to a shared daemon thread. */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public HedgingInterceptor build() {
+            return new HedgingInterceptor(this);
+        }
+    }
+
+    private static final class SharedTimer {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hedging-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
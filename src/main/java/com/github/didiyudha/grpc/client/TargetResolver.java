@@ -0,0 +1,108 @@
+package com.github.didiyudha.grpc.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns a target specification into the {@code host:port} addresses a
+ * {@link ChannelPool} connects to. Two forms are understood:
+ *
+ * <pre>
+ * localhost:50055,10.0.0.2:50055     a static, comma separated list
+ * file:/etc/calculator/targets       one host:port per line; blank lines and # comments are ignored
+ * </pre>
+ *
+ * Either form may also name an in-process server in this JVM, e.g.
+ * {@code inprocess:calculator}.
+ *
+ * File targets are re-read on every {@link #resolve()}, so a pool with a
+ * refresh interval follows edits to the file.
+ */
+public final class TargetResolver {
+
+    private static final String FILE_PREFIX = "file:";
+    private static final String IN_PROCESS_PREFIX = "inprocess:";
+
+    private final String spec;
+
+    private TargetResolver(String spec) {
+        this.spec = spec;
+    }
+
+    public static TargetResolver forSpec(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty target");
+        }
+        return new TargetResolver(spec.trim());
+    }
+
+    /**
+     * Returns the in-process server name of {@code target}, or null for a {@code host:port} target.
+     */
+    public static String inProcessName(String target) {
+        return target.startsWith(IN_PROCESS_PREFIX) ? target.substring(IN_PROCESS_PREFIX.length()) : null;
+    }
+
+    public boolean isStatic() {
+        return !spec.startsWith(FILE_PREFIX);
+    }
+
+    /**
+     * Returns the current targets, in the order given.
+     */
+    public List<String> resolve() {
+        List<String> targets = new ArrayList<>();
+        if (isStatic()) {
+            for (String target : spec.split(",")) {
+                add(targets, target);
+            }
+        } else {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(Paths.get(spec.substring(FILE_PREFIX.length())), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read targets from " + spec, e);
+            }
+            for (String line : lines) {
+                int comment = line.indexOf('#');
+                add(targets, comment >= 0 ? line.substring(0, comment) : line);
+            }
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No targets in " + spec);
+        }
+        return Collections.unmodifiableList(targets);
+    }
+
+    private static void add(List<String> targets, String target) {
+        String trimmed = target.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        String inProcessName = inProcessName(trimmed);
+        if (inProcessName != null) {
+            if (inProcessName.isEmpty()) {
+                throw new IllegalArgumentException("In-process target needs a name: " + trimmed);
+            }
+        } else {
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0 || !trimmed.substring(colon + 1).matches("\\d{1,5}")) {
+                throw new IllegalArgumentException("Target must be host:port: " + trimmed);
+            }
+        }
+        if (!targets.contains(trimmed)) {
+            targets.add(trimmed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.didiyudha.grpc.compression;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.MethodDescriptor;
+
+import java.util.List;
+
+/**
+ * Compresses requests as the {@link CompressionPolicy} says. A client cannot
+ * know what the server accepts before its first call, so the method's first
+ * encoding is always used; list {@code gzip} first unless every server
+ * registers {@link Lz4Codec}. Responses are compressed by the server's own
+ * policy; to receive lz4 the channel must use
+ * {@link CompressionPolicy#decompressorRegistry()}.
+ */
+public final class CompressionClientInterceptor implements ClientInterceptor {
+
+    private final CompressionPolicy policy;
+
+    public CompressionClientInterceptor(CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        List<String> encodings = policy.encodingsFor(method);
+        if (encodings.isEmpty()) {
+            return next.newCall(method, callOptions);
+        }
+        ClientCall<ReqT, RespT> call = next.newCall(method, callOptions.withCompression(encodings.get(0)));
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(ReqT message) {
+                setMessageCompression(policy.shouldCompress(method.getRequestMarshaller(), message));
+                super.sendMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.didiyudha.grpc.compression;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which methods compress their messages, with which encoding, and from what
+ * size on. Methods are named without their service, and each lists the
+ * encodings it may use in order of preference:
+ *
+ * <pre>
+ * GreetManyTimes=gzip,LongGreet=lz4|gzip
+ * </pre>
+ *
+ * Messages smaller than {@code minMessageSize} bytes are sent uncompressed
+ * even on those methods, since compressing a few bytes costs CPU and
+ * usually makes them larger.
+ */
+public final class CompressionPolicy {
+
+    private static final CompressorRegistry COMPRESSORS = CompressorRegistry.newEmptyInstance();
+    private static final DecompressorRegistry DECOMPRESSORS;
+
+    static {
+        Lz4Codec lz4 = new Lz4Codec();
+        COMPRESSORS.register(Codec.Identity.NONE);
+        COMPRESSORS.register(new Codec.Gzip());
+        COMPRESSORS.register(lz4);
+        DECOMPRESSORS = DecompressorRegistry.getDefaultInstance().with(lz4, true);
+    }
+
+    private final Map<String, List<String>> encodings;
+    private final int minMessageSize;
+
+    private CompressionPolicy(Map<String, List<String>> encodings, int minMessageSize) {
+        this.encodings = encodings;
+        this.minMessageSize = minMessageSize;
+    }
+
+    public static CompressionPolicy none() {
+        return new CompressionPolicy(Collections.emptyMap(), 0);
+    }
+
+    /**
+     * @param spec comma separated {@code Method=encoding|encoding} entries; empty for no compression
+     */
+    public static CompressionPolicy parse(String spec, int minMessageSize) {
+        Map<String, String> methods = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Compression entry must be Method=encoding: " + entry.trim());
+            }
+            methods.put(entry.substring(0, equals).trim(), entry.substring(equals + 1));
+        }
+        return forMethods(methods, minMessageSize);
+    }
+
+    /**
+     * @param methods {@code encoding|encoding} preferences keyed by bare method name
+     */
+    public static CompressionPolicy forMethods(Map<String, String> methods, int minMessageSize) {
+        if (minMessageSize < 0) {
+            throw new IllegalArgumentException("minMessageSize must not be negative: " + minMessageSize);
+        }
+        Map<String, List<String>> encodings = new HashMap<>();
+        for (Map.Entry<String, String> method : methods.entrySet()) {
+            List<String> preferred = new ArrayList<>();
+            for (String encoding : method.getValue().split("\\|")) {
+                String name = encoding.trim();
+                if (COMPRESSORS.lookupCompressor(name) == null) {
+                    throw new IllegalArgumentException("Unknown encoding for " + method.getKey() + ": " + name);
+                }
+                preferred.add(name);
+            }
+            encodings.put(method.getKey(), Collections.unmodifiableList(preferred));
+        }
+        return new CompressionPolicy(Collections.unmodifiableMap(encodings), minMessageSize);
+    }
+
+    /**
+     * gRPC's compressors plus {@link Lz4Codec}. Install on servers and channels that should send lz4.
+     */
+    public static CompressorRegistry compressorRegistry() {
+        return COMPRESSORS;
+    }
+
+    /**
+     * gRPC's decompressors plus {@link Lz4Codec}, advertised to peers in {@code grpc-accept-encoding}.
+     */
+    public static DecompressorRegistry decompressorRegistry() {
+        return DECOMPRESSORS;
+    }
+
+    public boolean isEmpty() {
+        return encodings.isEmpty();
+    }
+
+    public int getMinMessageSize() {
+        return minMessageSize;
+    }
+
+    /**
+     * The encodings {@code method} may use, most preferred first, or an empty list.
+     */
+    public List<String> encodingsFor(MethodDescriptor<?, ?> method) {
+        String fullName = method.getFullMethodName();
+        List<String> preferred = encodings.get(fullName.substring(fullName.lastIndexOf('/') + 1));
+        return preferred != null ? preferred : Collections.<String>emptyList();
+    }
+
+    /**
+     * Whether a message is large enough to be worth compressing. Messages of unknown size are compressed.
+     */
+    <T> boolean shouldCompress(MethodDescriptor.Marshaller<T> marshaller, T message) {
+        if (minMessageSize == 0) {
+            return true;
+        }
+        if (message instanceof MessageLite) {
+            // Cached by the message, so the marshaller does not compute it again
+            return ((MessageLite) message).getSerializedSize() >= minMessageSize;
+        }
+        try (InputStream stream = marshaller.stream(message)) {
+            return !(stream instanceof KnownLength) || stream.available() >= minMessageSize;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Picks the first preferred encoding the peer accepts, or null.
+     *
+     * @param acceptEncoding the peer's {@code grpc-accept-encoding} header, may be null
+     */
+    static String negotiate(List<String> preferred, String acceptEncoding) {
+        if (preferred.isEmpty() || acceptEncoding == null) {
+            return null;
+        }
+        List<String> accepted = new ArrayList<>();
+        for (String encoding : acceptEncoding.split(",")) {
+            accepted.add(encoding.trim());
+        }
+        for (String encoding : preferred) {
+            if (Codec.Identity.NONE.getMessageEncoding().equals(encoding) || accepted.contains(encoding)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (encodings.isEmpty()) {
+            return "none";
+        }
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, List<String>> method : encodings.entrySet()) {
+            entries.add(method.getKey() + "=" + String.join("|", method.getValue()));
+        }
+        Collections.sort(entries);
+        return entries + " from " + minMessageSize + " bytes";
+    }
+}
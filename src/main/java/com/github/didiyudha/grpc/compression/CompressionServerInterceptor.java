@@ -0,0 +1,43 @@
+package com.github.didiyudha.grpc.compression;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Compresses responses as the {@link CompressionPolicy} says. The encoding
+ * is the first one in the method's preferences that the client lists in
+ * {@code grpc-accept-encoding}; when there is none, responses go out
+ * uncompressed. The server must use {@link CompressionPolicy#compressorRegistry()}.
+ */
+public final class CompressionServerInterceptor implements ServerInterceptor {
+
+    static final Metadata.Key<String> ACCEPT_ENCODING =
+            Metadata.Key.of("grpc-accept-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final CompressionPolicy policy;
+
+    public CompressionServerInterceptor(CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String encoding = CompressionPolicy.negotiate(policy.encodingsFor(call.getMethodDescriptor()),
+                headers.get(ACCEPT_ENCODING));
+        if (encoding == null) {
+            return next.startCall(call, headers);
+        }
+        call.setCompression(encoding);
+        return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                setMessageCompression(policy.shouldCompress(getMethodDescriptor().getResponseMarshaller(), message));
+                super.sendMessage(message);
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.didiyudha.grpc.compression;
+
+import io.grpc.Codec;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 frame format message encoding, registered as {@code lz4}. It saves
+ * less than gzip on text but costs a fraction of the CPU. Both peers must
+ * register it; it is not one of gRPC's built-in encodings.
+ */
+public final class Lz4Codec implements Codec {
+
+    public static final String ENCODING = "lz4";
+
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+    private static final XXHash32 CHECKSUM = XXHashFactory.fastestInstance().hash32();
+
+    @Override
+    public String getMessageEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream os) throws IOException {
+        // gRPC messages are small; the default 4 MB block would allocate a 4 MB buffer per message
+        return new LZ4FrameOutputStream(os, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+    }
+
+    @Override
+    public InputStream decompress(InputStream is) throws IOException {
+        return new LZ4FrameInputStream(is, DECOMPRESSOR, CHECKSUM);
+    }
+}
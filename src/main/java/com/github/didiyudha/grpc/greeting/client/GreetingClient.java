@@ -1,9 +1,12 @@
 package com.github.didiyudha.grpc.greeting.client;
 
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.client.HedgingInterceptor;
+import com.github.didiyudha.grpc.compression.CompressionClientInterceptor;
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+import com.github.didiyudha.grpc.server.ReloadingSslContext;
 import com.proto.greet.*;
 import io.grpc.*;
-import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
-import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import io.grpc.stub.StreamObserver;
 
 import javax.net.ssl.SSLException;
@@ -16,21 +19,39 @@ import java.util.concurrent.TimeUnit;
 public class GreetingClient {
 
     public void run() throws SSLException {
-        ManagedChannel channel =
-                ManagedChannelBuilder.forAddress("localhost", 50051)
-                        .usePlaintext()
-                        .build();
+        // -Dgreeting.target=host:port,host:port or file:path spreads calls over several servers
+        String target = System.getProperty("greeting.target", "localhost:50051");
 
-        ManagedChannel securedChannel = NettyChannelBuilder.forAddress("localhost",50051)
-                .sslContext(GrpcSslContexts.forClient().trustManager(new File("ssl/ca.crt")).build())
+        ManagedChannel channel = ChannelPool.newBuilder(target)
                 .build();
 
+        // One context, with the server's provider and cipher order, for every connection of the pool
+        ManagedChannel securedChannel = ChannelPool.newBuilder(target)
+                .connectionsPerTarget(Integer.getInteger("greeting.connections", 1))
+                .sslContext(ReloadingSslContext.forClient(new File("ssl/ca.crt")))
+                .keepAliveTime(30, TimeUnit.SECONDS)
+                .idleTimeout(5, TimeUnit.MINUTES)
+                .compressorRegistry(CompressionPolicy.compressorRegistry())
+                .decompressorRegistry(CompressionPolicy.decompressorRegistry())
+                .build();
+
+        // -Dgreeting.compression=LongGreet=gzip compresses the requests of those methods
+        CompressionClientInterceptor compression = new CompressionClientInterceptor(
+                CompressionPolicy.parse(System.getProperty("greeting.compression", ""), 1024));
+
         // Create blocking client
 //        GreetServiceGrpc.GreetServiceBlockingStub syncClient =
 //                GreetServiceGrpc.newBlockingStub(channel);
 
+        // Greet and GreetWithDeadline are idempotent, so slow or UNAVAILABLE calls are sent again
+        HedgingInterceptor hedging = HedgingInterceptor.newBuilder()
+                .forMethods(GreetServiceGrpc.getGreetMethod(), GreetServiceGrpc.getGreetWithDeadlineMethod())
+                .maxAttempts(3)
+                .hedgingDelay(500, TimeUnit.MILLISECONDS)
+                .hedgingPercentile(95)
+                .build();
         GreetServiceGrpc.GreetServiceBlockingStub syncClient =
-                GreetServiceGrpc.newBlockingStub(securedChannel);
+                GreetServiceGrpc.newBlockingStub(securedChannel).withInterceptors(compression, hedging);
 
         doUnaryCall(syncClient);
         // doServerStreamingCall(syncClient);
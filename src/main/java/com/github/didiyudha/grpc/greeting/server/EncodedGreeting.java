@@ -0,0 +1,162 @@
+package com.github.didiyudha.grpc.greeting.server;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A greeting reply kept as its two UTF-8 parts, a shared constant prefix and
+ * the caller's name, and encoded straight into the transport buffer.
+ *
+ * GreetResponse, GreetEveryoneResponse and GreetWithDeadlineResponse all hold a
+ * single {@code string result = 1}, so the wire form is the same for each and
+ * clients decode it with their usual generated classes.
+ */
+final class EncodedGreeting {
+
+    private static final int RESULT_TAG = (1 << 3) | 2;
+
+    /** Writes replies without building a message, and reads them back with the whole result as the name. */
+    static final MethodDescriptor.Marshaller<EncodedGreeting> MARSHALLER =
+            new MethodDescriptor.Marshaller<EncodedGreeting>() {
+                @Override
+                public InputStream stream(EncodedGreeting value) {
+                    return new EncodedGreetingStream(value);
+                }
+
+                @Override
+                public EncodedGreeting parse(InputStream stream) {
+                    try {
+                        return EncodedGreeting.parse(ByteStreams.toByteArray(stream));
+                    } catch (IOException e) {
+                        throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence")
+                                .withCause(e).asRuntimeException();
+                    }
+                }
+            };
+
+    private final ByteString prefix;
+    private final ByteString name;
+
+    EncodedGreeting(ByteString prefix, ByteString name) {
+        this.prefix = prefix;
+        this.name = name;
+    }
+
+    // Unknown fields are skipped and a missing result is empty, as for the generated responses
+    static EncodedGreeting parse(byte[] bytes) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        ByteString result = ByteString.EMPTY;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            if (tag == RESULT_TAG) {
+                result = in.readBytes();
+            } else if (!in.skipField(tag)) {
+                break;
+            }
+        }
+        return new EncodedGreeting(ByteString.EMPTY, result);
+    }
+
+    int getSerializedSize() {
+        int length = prefix.size() + name.size();
+        return 1 + varintSize(length) + length;
+    }
+
+    int writeTo(OutputStream out) throws IOException {
+        int length = prefix.size() + name.size();
+        out.write(RESULT_TAG);
+        for (int value = length; ; value >>>= 7) {
+            if ((value & ~0x7F) == 0) {
+                out.write(value);
+                break;
+            }
+            out.write((value & 0x7F) | 0x80);
+        }
+        prefix.writeTo(out);
+        name.writeTo(out);
+        return 1 + varintSize(length) + length;
+    }
+
+    byte[] toByteArray() {
+        ByteString.Output out = ByteString.newOutput(getSerializedSize());
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteString().toByteArray();
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Drained by the Netty transport straight into its buffer. Only transports
+     * that read byte by byte, such as in-process, fall back to a copy.
+     */
+    private static final class EncodedGreetingStream extends InputStream implements Drainable, KnownLength {
+        private EncodedGreeting greeting;
+        private ByteArrayInputStream partial;
+
+        EncodedGreetingStream(EncodedGreeting greeting) {
+            this.greeting = greeting;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int written;
+            if (greeting != null) {
+                written = greeting.writeTo(target);
+                greeting = null;
+            } else if (partial != null) {
+                written = (int) ByteStreams.copy(partial, target);
+                partial = null;
+            } else {
+                written = 0;
+            }
+            return written;
+        }
+
+        @Override
+        public int read() {
+            materialize();
+            return partial != null ? partial.read() : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            materialize();
+            return partial != null ? partial.read(b, off, len) : -1;
+        }
+
+        @Override
+        public int available() {
+            if (greeting != null) {
+                return greeting.getSerializedSize();
+            }
+            return partial != null ? partial.available() : 0;
+        }
+
+        private void materialize() {
+            if (greeting != null) {
+                partial = new ByteArrayInputStream(greeting.toByteArray());
+                greeting = null;
+            }
+        }
+    }
+}
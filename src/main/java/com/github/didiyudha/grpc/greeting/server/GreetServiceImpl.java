@@ -1,11 +1,84 @@
 package com.github.didiyudha.grpc.greeting.server;
 
 
+import com.github.didiyudha.grpc.server.OrderedPipeline;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
 import com.proto.greet.*;
 import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 public class GreetServiceImpl extends GreetServiceGrpc.GreetServiceImplBase {
+
+    private static final int GREET_MANY_TIMES_COUNT = 10;
+    private static final long GREET_MANY_TIMES_INTERVAL_MS = 1000L;
+    static final long GREET_WITH_DEADLINE_DELAY_MS = 300L;
+    private static final int LONG_GREET_CHUNK_SIZE = 16 * 1024;
+
+    /** Default limit of a LongGreet result, well below the usual 4 MiB message limit. */
+    public static final int DEFAULT_LONG_GREET_MAX_RESULT_SIZE = 1024 * 1024;
+
+    private static final ByteString HELLO = ByteString.copyFromUtf8("Hello ");
+    private static final ByteString HELLO_WITH_COLON = ByteString.copyFromUtf8("Hello: ");
+    private static final ByteString LONG_GREET_SEPARATOR = ByteString.copyFromUtf8("! ");
+
+    private final ScheduledExecutorService scheduler;
+    private final int longGreetMaxResultSize;
+    private final OrderedPipeline pipeline;
+
+    public GreetServiceImpl() {
+        this(SharedTimer.INSTANCE, DEFAULT_LONG_GREET_MAX_RESULT_SIZE);
+    }
+
+    /**
+     * @param longGreetMaxResultSize largest LongGreet result in bytes; longer streams fail with RESOURCE_EXHAUSTED
+     */
+    public GreetServiceImpl(int longGreetMaxResultSize) {
+        this(SharedTimer.INSTANCE, longGreetMaxResultSize);
+    }
+
+    /**
+     * @param scheduler timer used for delayed emissions instead of sleeping on a gRPC thread;
+     *                  only short, non-blocking tasks are submitted to it
+     */
+    public GreetServiceImpl(ScheduledExecutorService scheduler) {
+        this(scheduler, DEFAULT_LONG_GREET_MAX_RESULT_SIZE);
+    }
+
+    /**
+     * @param pipeline worker pool for GreetEveryone streams, or null to handle each message inline
+     */
+    public GreetServiceImpl(int longGreetMaxResultSize, OrderedPipeline pipeline) {
+        this(SharedTimer.INSTANCE, longGreetMaxResultSize, pipeline);
+    }
+
+    public GreetServiceImpl(ScheduledExecutorService scheduler, int longGreetMaxResultSize) {
+        this(scheduler, longGreetMaxResultSize, null);
+    }
+
+    public GreetServiceImpl(ScheduledExecutorService scheduler, int longGreetMaxResultSize, OrderedPipeline pipeline) {
+        if (longGreetMaxResultSize <= 0) {
+            throw new IllegalArgumentException("longGreetMaxResultSize must be positive: " + longGreetMaxResultSize);
+        }
+        this.scheduler = scheduler;
+        this.longGreetMaxResultSize = longGreetMaxResultSize;
+        this.pipeline = pipeline;
+    }
+
     @Override
     public void greet(GreetRequest request, StreamObserver<GreetResponse> responseObserver) {
         // extract the fields we need
@@ -27,23 +100,15 @@ public class GreetServiceImpl extends GreetServiceGrpc.GreetServiceImplBase {
 
     @Override
     public void greetManyTimes(GreetManyTimesRequest request, StreamObserver<GreetManyTimesResponse> responseObserver) {
-        String firstName = request.getGreeting().getFirstName();
+        ServerCallStreamObserver<GreetManyTimesResponse> serverObserver =
+                (ServerCallStreamObserver<GreetManyTimesResponse>) responseObserver;
 
-        try {
-            for (int i = 0; i < 10; i++) {
-                String result = "Hello " + firstName + ", response number: " + i;
-                GreetManyTimesResponse response = GreetManyTimesResponse.newBuilder()
-                        .setResult(result)
-                        .build();
+        GreetManyTimesStream stream = new GreetManyTimesStream(
+                request.getGreeting().getFirstName(), serverObserver);
 
-                responseObserver.onNext(response);
-                Thread.sleep(1000L);
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            responseObserver.onCompleted();
-        }
+        serverObserver.setOnCancelHandler(stream::cancel);
+        serverObserver.setOnReadyHandler(stream::onReady);
+        stream.emit();
     }
 
     @Override
@@ -51,25 +116,44 @@ public class GreetServiceImpl extends GreetServiceGrpc.GreetServiceImplBase {
         // we create the requestObserver that we'll return in this function
         StreamObserver<LongGreetRequest> requestObserver = new StreamObserver<LongGreetRequest>() {
 
-            String result = "";
+            // A rope: appending links the greeting in instead of copying the whole result
+            ByteString result = ByteString.EMPTY;
+            boolean failed = false;
 
             @Override
             public void onNext(LongGreetRequest value) {
                 // client sends a message
-                result += "Hello " + value.getGreeting().getFirstName() + "! ";
+                if (failed) {
+                    return;
+                }
+                ByteString greeting = longGreeting(value);
+                if (result.size() + greeting.size() > longGreetMaxResultSize) {
+                    failed = true;
+                    result = ByteString.EMPTY;
+                    responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                            .withDescription("LongGreet result exceeds " + longGreetMaxResultSize
+                                    + " bytes, use LongGreetChunked for long streams")
+                            .asRuntimeException());
+                    return;
+                }
+                result = result.concat(greeting);
             }
 
             @Override
             public void onError(Throwable t) {
                 // client sends an error
+                result = ByteString.EMPTY;
             }
 
             @Override
             public void onCompleted() {
                 // client is done
+                if (failed) {
+                    return;
+                }
                 responseObserver.onNext(
                         LongGreetResponse.newBuilder()
-                                .setResult(result)
+                                .setResultBytes(result)
                                 .build()
                 );
                 responseObserver.onCompleted();
@@ -80,17 +164,93 @@ public class GreetServiceImpl extends GreetServiceGrpc.GreetServiceImplBase {
         return requestObserver;
     }
 
+    @Override
+    public StreamObserver<LongGreetRequest> longGreetChunked(StreamObserver<LongGreetResponse> responseObserver) {
+        ServerCallStreamObserver<LongGreetResponse> serverObserver =
+                (ServerCallStreamObserver<LongGreetResponse>) responseObserver;
+
+        // Only ask for the next greeting while the client keeps up with the chunks,
+        // so a slow reader holds back the sender instead of filling the server's buffers
+        serverObserver.disableAutoInboundFlowControl();
+
+        // Transport callbacks for one call are serialized, so the state needs no lock
+        StreamObserver<LongGreetRequest> requestObserver = new StreamObserver<LongGreetRequest>() {
+
+            ByteString chunk = ByteString.EMPTY;
+            boolean awaitingReady = false;
+
+            {
+                serverObserver.setOnReadyHandler(() -> {
+                    if (awaitingReady) {
+                        awaitingReady = false;
+                        serverObserver.request(1);
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(LongGreetRequest value) {
+                chunk = chunk.concat(longGreeting(value));
+                if (chunk.size() >= LONG_GREET_CHUNK_SIZE) {
+                    flush();
+                }
+                if (serverObserver.isReady()) {
+                    serverObserver.request(1);
+                } else {
+                    awaitingReady = true;
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                chunk = ByteString.EMPTY;
+            }
+
+            @Override
+            public void onCompleted() {
+                if (!chunk.isEmpty()) {
+                    flush();
+                }
+                serverObserver.onCompleted();
+            }
+
+            // Chunks always end on a whole greeting, so each one is valid UTF-8
+            private void flush() {
+                serverObserver.onNext(LongGreetResponse.newBuilder()
+                        .setResultBytes(chunk)
+                        .build());
+                chunk = ByteString.EMPTY;
+            }
+        };
+
+        serverObserver.request(1);
+        return requestObserver;
+    }
+
+    private static ByteString longGreeting(LongGreetRequest request) {
+        return HELLO
+                .concat(request.getGreeting().getFirstNameBytes())
+                .concat(LONG_GREET_SEPARATOR);
+    }
+
     @Override
     public StreamObserver<GreetEveryoneRequest> greetEveryone(StreamObserver<GreetEveryoneResponse> responseObserver) {
+        return greetEveryone(responseObserver, value -> GreetEveryoneResponse
+                .newBuilder()
+                .setResult("Hello " + value.getGreeting().getFirstName())
+                .build());
+    }
+
+    private <T> StreamObserver<GreetEveryoneRequest> greetEveryone(StreamObserver<T> responseObserver,
+                                                                  Function<GreetEveryoneRequest, T> reply) {
+        if (pipeline != null) {
+            return pipeline.start(responseObserver, reply, Function.identity());
+        }
+
         StreamObserver<GreetEveryoneRequest> requestStreamObserver = new StreamObserver<GreetEveryoneRequest>() {
             @Override
             public void onNext(GreetEveryoneRequest value) {
-                String result = "Hello "+ value.getGreeting().getFirstName();
-                GreetEveryoneResponse response = GreetEveryoneResponse
-                        .newBuilder()
-                        .setResult(result)
-                        .build();
-                responseObserver.onNext(response);
+                responseObserver.onNext(reply.apply(value));
             }
 
             @Override
@@ -108,32 +268,153 @@ public class GreetServiceImpl extends GreetServiceGrpc.GreetServiceImplBase {
 
     @Override
     public void greetWithDeadline(GreetWithDeadlineRequest request, StreamObserver<GreetWithDeadlineResponse> responseObserver) {
+        greetWithDeadline(request, responseObserver, value -> GreetWithDeadlineResponse
+                .newBuilder()
+                .setResult("Hello: " + value.getGreeting().getFirstName())
+                .build());
+    }
 
+    private <T> void greetWithDeadline(GreetWithDeadlineRequest request, StreamObserver<T> responseObserver,
+                                       Function<GreetWithDeadlineRequest, T> reply) {
         Context context = Context.current();
 
-        try {
-            for (int i = 0; i < 3; i++) {
-                if (!context.isCancelled()) {
-                    System.out.println("Sleep for 100 ms");
-                    Thread.sleep(100);
-                } else {
-                    return;
-                }
+        // Don't start work the client has already given up on
+        Deadline deadline = context.getDeadline();
+        if (deadline != null && deadline.timeRemaining(TimeUnit.MILLISECONDS) < GREET_WITH_DEADLINE_DELAY_MS) {
+            responseObserver.onError(Status.DEADLINE_EXCEEDED
+                    .withDescription("Deadline too short to complete the greeting")
+                    .asRuntimeException());
+            return;
+        }
+
+        ScheduledFuture<?> scheduled = scheduler.schedule(() -> {
+            if (context.isCancelled()) {
+                return;
             }
+            responseObserver.onNext(reply.apply(request));
+            responseObserver.onCompleted();
+        }, GREET_WITH_DEADLINE_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        context.addListener(cancelled -> scheduled.cancel(false), MoreExecutors.directExecutor());
+    }
 
-            System.out.println("Send response");
-            responseObserver.onNext(
-                    GreetWithDeadlineResponse
-                            .newBuilder()
-                            .setResult("Hello: " + request.getGreeting().getFirstName())
-                            .build()
-            );
+    /**
+     * Like {@link #bindService()}, but Greet, GreetEveryone and GreetWithDeadline
+     * use a response marshaller that writes the constant prefix and the caller's
+     * name straight into the transport buffer, skipping the String concatenation,
+     * the response builder and protobuf encoding. The wire format is unchanged.
+     */
+    public ServerServiceDefinition bindPreEncodedService() {
+        ServerServiceDefinition generated = super.bindService();
+        MethodDescriptor<GreetRequest, EncodedGreeting> greetMethod = preEncoded(
+                GreetServiceGrpc.getGreetMethod());
+        MethodDescriptor<GreetEveryoneRequest, EncodedGreeting> greetEveryoneMethod = preEncoded(
+                GreetServiceGrpc.getGreetEveryoneMethod());
+        MethodDescriptor<GreetWithDeadlineRequest, EncodedGreeting> greetWithDeadlineMethod = preEncoded(
+                GreetServiceGrpc.getGreetWithDeadlineMethod());
 
-            responseObserver.onCompleted();
+        ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(GreetServiceGrpc.SERVICE_NAME)
+                .setSchemaDescriptor(generated.getServiceDescriptor().getSchemaDescriptor())
+                .addMethod(greetMethod)
+                .addMethod(greetEveryoneMethod)
+                .addMethod(greetWithDeadlineMethod);
+        for (ServerMethodDefinition<?, ?> method : generated.getMethods()) {
+            if (!isPreEncoded(method.getMethodDescriptor().getFullMethodName())) {
+                descriptor.addMethod(method.getMethodDescriptor());
+            }
+        }
 
-        }catch (InterruptedException e) {
-            e.printStackTrace();
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build())
+                .addMethod(greetMethod, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                    responseObserver.onNext(new EncodedGreeting(HELLO, request.getGreeting().getFirstNameBytes()));
+                    responseObserver.onCompleted();
+                }))
+                .addMethod(greetEveryoneMethod, ServerCalls.asyncBidiStreamingCall(responseObserver ->
+                        greetEveryone(responseObserver,
+                                value -> new EncodedGreeting(HELLO, value.getGreeting().getFirstNameBytes()))))
+                .addMethod(greetWithDeadlineMethod, ServerCalls.asyncUnaryCall((request, responseObserver) ->
+                        greetWithDeadline(request, responseObserver,
+                                value -> new EncodedGreeting(HELLO_WITH_COLON, value.getGreeting().getFirstNameBytes()))));
+        for (ServerMethodDefinition<?, ?> method : generated.getMethods()) {
+            if (!isPreEncoded(method.getMethodDescriptor().getFullMethodName())) {
+                builder.addMethod(method);
+            }
         }
+        return builder.build();
+    }
+
+    private static <ReqT> MethodDescriptor<ReqT, EncodedGreeting> preEncoded(MethodDescriptor<ReqT, ?> method) {
+        return method.toBuilder(method.getRequestMarshaller(), EncodedGreeting.MARSHALLER).build();
+    }
+
+    private static boolean isPreEncoded(String fullMethodName) {
+        return fullMethodName.equals(GreetServiceGrpc.getGreetMethod().getFullMethodName())
+                || fullMethodName.equals(GreetServiceGrpc.getGreetEveryoneMethod().getFullMethodName())
+                || fullMethodName.equals(GreetServiceGrpc.getGreetWithDeadlineMethod().getFullMethodName());
+    }
+
+    /**
+     * Emits the GreetManyTimes responses one interval apart. Timer ticks and
+     * transport callbacks arrive on different threads, so state is guarded by
+     * the instance lock; a tick that finds the transport not ready parks the
+     * stream until the next onReady callback.
+     */
+    private final class GreetManyTimesStream {
+        private final String firstName;
+        private final ServerCallStreamObserver<GreetManyTimesResponse> observer;
+
+        private int sent = 0;
+        private boolean awaitingReady = false;
+        private boolean finished = false;
+        private ScheduledFuture<?> pending;
+
+        GreetManyTimesStream(String firstName, ServerCallStreamObserver<GreetManyTimesResponse> observer) {
+            this.firstName = firstName;
+            this.observer = observer;
+        }
+
+        synchronized void emit() {
+            if (finished || observer.isCancelled()) {
+                return;
+            }
+            if (!observer.isReady()) {
+                awaitingReady = true;
+                return;
+            }
+
+            observer.onNext(GreetManyTimesResponse.newBuilder()
+                    .setResult("Hello " + firstName + ", response number: " + sent)
+                    .build());
+            sent++;
+
+            if (sent == GREET_MANY_TIMES_COUNT) {
+                finished = true;
+                observer.onCompleted();
+            } else {
+                pending = scheduler.schedule(this::emit, GREET_MANY_TIMES_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void onReady() {
+            if (awaitingReady) {
+                awaitingReady = false;
+                emit();
+            }
+        }
+
+        synchronized void cancel() {
+            finished = true;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+    }
 
+    private static final class SharedTimer {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "greet-service-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
@@ -1,35 +1,104 @@
 package com.github.didiyudha.grpc.greeting.server;
 
+import com.github.didiyudha.grpc.server.ReloadingSslContext;
+import com.github.didiyudha.grpc.server.ServerBootstrap;
+import com.github.didiyudha.grpc.server.ServerConfig;
+import com.github.didiyudha.grpc.server.ServerWarmUp;
+import com.proto.greet.GreetEveryoneRequest;
+import com.proto.greet.GreetManyTimesRequest;
+import com.proto.greet.GreetRequest;
+import com.proto.greet.GreetServiceGrpc;
+import com.proto.greet.GreetWithDeadlineRequest;
+import com.proto.greet.Greeting;
+import com.proto.greet.LongGreetRequest;
+import io.grpc.Channel;
+import io.grpc.Context;
 import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.StatusRuntimeException;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 public class GreetingServer {
     public static void main(String[] args) throws IOException, InterruptedException {
         System.out.println("Greeting server gRPC");
+        ServerBootstrap bootstrap = new ServerBootstrap(ServerConfig.load("greeting", 50051));
 
         // Plain text server
-        // Server server = ServerBuilder.forPort(50051)
-        //      .addService(new GreetServiceImpl())
+        // Server server = bootstrap.newServerBuilder()
+        //      .addService(newService(bootstrap, bootstrap.getConfig()))
         //      .build();
 
-        // Secure server
-        Server server = ServerBuilder.forPort(50051)
-                .addService(new GreetServiceImpl())
-                .useTransportSecurity(
-                        new File("ssl/server.crt"),
-                        new File("ssl/server.pem"))
+        // Secure server; tls.* settings tune the handshake and reload renewed certificates
+        ReloadingSslContext sslContext = ReloadingSslContext
+                .fromConfig(bootstrap.getConfig(), "ssl/server.crt", "ssl/server.pem")
+                .build();
+        Server server = bootstrap.newServerBuilder(sslContext)
+                .addService(newService(bootstrap, bootstrap.getConfig()))
                 .build();
 
-        server.start();
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Received shutdown request");
-            server.shutdown();
-            System.out.println("Successfully stopped the server");
-        }));
-
+        bootstrap.start(server);
         server.awaitTermination();
+        sslContext.close();
+    }
+
+    /**
+     * The greeting service on the bootstrap's pipeline, with the LongGreet limit of {@code config}.
+     */
+    public static ServerServiceDefinition newService(ServerBootstrap bootstrap, ServerConfig config) {
+        int longGreetMaxResultSize = config.getInt("longGreet.maxResultSize",
+                GreetServiceImpl.DEFAULT_LONG_GREET_MAX_RESULT_SIZE);
+        GreetServiceImpl impl = new GreetServiceImpl(longGreetMaxResultSize, bootstrap.getPipeline());
+        ServerServiceDefinition service = impl.bindPreEncodedService();
+        bootstrap.addWarmUp(service, GreetingServer::warmUp, GreetingServer::warmUpDeadline);
+        return service;
+    }
+
+    /**
+     * Calls every greeting method once. GreetManyTimes is cancelled after its
+     * first reply and GreetWithDeadline gets a deadline too short to wait for,
+     * so repeating the warm-up does not sit through their delays.
+     */
+    static void warmUp(Channel channel) throws InterruptedException {
+        GreetServiceGrpc.GreetServiceBlockingStub blockingStub = GreetServiceGrpc.newBlockingStub(channel);
+        GreetServiceGrpc.GreetServiceStub asyncStub = GreetServiceGrpc.newStub(channel);
+        Greeting greeting = Greeting.newBuilder().setFirstName("Didi").build();
+
+        blockingStub.greet(GreetRequest.newBuilder().setGreeting(greeting).build());
+
+        Context.CancellableContext manyTimes = Context.current().withCancellation();
+        try {
+            manyTimes.run(() -> blockingStub
+                    .greetManyTimes(GreetManyTimesRequest.newBuilder().setGreeting(greeting).build())
+                    .next());
+        } finally {
+            manyTimes.cancel(null);
+        }
+
+        try {
+            blockingStub.withDeadlineAfter(50, TimeUnit.MILLISECONDS)
+                    .greetWithDeadline(GreetWithDeadlineRequest.newBuilder().setGreeting(greeting).build());
+        } catch (StatusRuntimeException expected) {
+            // DEADLINE_EXCEEDED, before the service starts waiting
+        }
+
+        LongGreetRequest longGreetRequest = LongGreetRequest.newBuilder().setGreeting(greeting).build();
+        ServerWarmUp.stream(asyncStub::longGreet, Arrays.asList(longGreetRequest, longGreetRequest));
+        ServerWarmUp.stream(asyncStub::longGreetChunked, Arrays.asList(longGreetRequest, longGreetRequest));
+        GreetEveryoneRequest greetEveryoneRequest = GreetEveryoneRequest.newBuilder().setGreeting(greeting).build();
+        ServerWarmUp.stream(asyncStub::greetEveryone, Arrays.asList(greetEveryoneRequest, greetEveryoneRequest));
+    }
+
+    /**
+     * Completes one GreetWithDeadline, waiting out its delay once, so the
+     * timer and its reply are warm too.
+     */
+    static void warmUpDeadline(Channel channel) {
+        Greeting greeting = Greeting.newBuilder().setFirstName("Didi").build();
+        GreetServiceGrpc.newBlockingStub(channel)
+                .withDeadlineAfter(GreetServiceImpl.GREET_WITH_DEADLINE_DELAY_MS * 10, TimeUnit.MILLISECONDS)
+                .greetWithDeadline(GreetWithDeadlineRequest.newBuilder().setGreeting(greeting).build());
     }
 }
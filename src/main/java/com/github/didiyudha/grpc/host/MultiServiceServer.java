@@ -0,0 +1,88 @@
+package com.github.didiyudha.grpc.host;
+
+import com.github.didiyudha.grpc.calculator.server.CalculatorServer;
+import com.github.didiyudha.grpc.greeting.server.GreetingServer;
+import com.github.didiyudha.grpc.server.ReloadingSslContext;
+import com.github.didiyudha.grpc.server.ServerBootstrap;
+import com.github.didiyudha.grpc.server.ServerConfig;
+import com.github.didiyudha.grpc.server.ServiceFactory;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs several services in one process, on one port, sharing its event
+ * loops, executor and pipeline. The host reads the usual settings under
+ * {@code server.}, and each service keeps reading its own settings under its
+ * name, e.g. {@code calculator.cache.add.maxEntries}:
+ *
+ * <pre>
+ * server.port=50050
+ * server.services=calculator,greeting
+ * server.tls.certChain=ssl/server.crt   # TLS for all services when set, see ReloadingSslContext
+ * server.shutdown.gracePeriod=30
+ * </pre>
+ */
+public class MultiServiceServer {
+
+    private static final Map<String, ServiceFactory> SERVICES = new LinkedHashMap<>();
+
+    static {
+        SERVICES.put("calculator", CalculatorServer::newService);
+        SERVICES.put("greeting", GreetingServer::newService);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.println("Multi-service server gRPC");
+        ServerBootstrap bootstrap = new ServerBootstrap(ServerConfig.load("server", 50050));
+        ServerConfig config = bootstrap.getConfig();
+
+        ReloadingSslContext sslContext = null;
+        if (config.getString("tls.certChain", null) != null) {
+            sslContext = ReloadingSslContext.fromConfig(config, null, "ssl/server.pem").build();
+        }
+
+        NettyServerBuilder builder = bootstrap.newServerBuilder(sslContext);
+        addServices(builder, bootstrap);
+        Server server = builder.build();
+        bootstrap.start(server);
+        server.awaitTermination();
+        if (sslContext != null) {
+            sslContext.close();
+        }
+    }
+
+    /**
+     * Co-location mode: starts the services listed in {@code server.services}
+     * on an in-process server called {@code name}, next to their callers.
+     * Callers keep using the generated stubs on a
+     * {@code ChannelPool.newBuilder("inprocess:" + name)} channel, and calls
+     * skip the socket and protobuf serialization. The server drains when the
+     * JVM exits.
+     */
+    public static Server startInProcess(String name) throws IOException, InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap(ServerConfig.load("server", 0));
+        InProcessServerBuilder builder = bootstrap.newInProcessServerBuilder(name);
+        addServices(builder, bootstrap);
+        Server server = builder.build();
+        bootstrap.start(server);
+        return server;
+    }
+
+    private static void addServices(ServerBuilder<?> builder, ServerBootstrap bootstrap) throws IOException {
+        String services = bootstrap.getConfig().getString("services", String.join(",", SERVICES.keySet()));
+        for (String name : services.split(",")) {
+            ServiceFactory factory = SERVICES.get(name.trim());
+            if (factory == null) {
+                throw new IllegalArgumentException("Unknown service " + name.trim() + ", expected one of " + SERVICES.keySet());
+            }
+            builder.addService(factory.create(bootstrap, ServerConfig.load(name.trim(), 0)));
+            System.out.println("Hosting " + name.trim());
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.github.didiyudha.grpc.loadgen;
+
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.client.HedgingInterceptor;
+import com.github.didiyudha.grpc.client.TargetResolver;
+import com.github.didiyudha.grpc.compression.CompressionClientInterceptor;
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+import com.github.didiyudha.grpc.host.MultiServiceServer;
+import com.github.didiyudha.grpc.metrics.ClientPhaseTracer;
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.metrics.PhaseMetrics;
+import com.proto.calculator.CalculatorServiceGrpc;
+import com.proto.greet.GreetServiceGrpc;
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a calculator or greeting server with a configurable mix of RPCs and
+ * reports HdrHistogram latency percentiles per RPC.
+ *
+ * Calls are spread over a {@link ChannelPool} with {@code channels}
+ * connections per target. At most {@code outstanding} calls are in flight
+ * across all of them; in closed-loop mode that many are kept in flight.
+ * In open-loop mode calls are scheduled at a fixed rate and latency is
+ * measured from the intended start time rather than the actual one, so a
+ * stalled server shows up in the percentiles instead of silently lowering the
+ * offered load (coordinated omission).
+ */
+public class LoadGenerator {
+
+    private final LoadGeneratorConfig config;
+    private final ChannelPool pool;
+    private final HedgingInterceptor hedging;
+    private final MetricsRegistry phases;
+    private final Channel channel;
+    private final RpcType[] rpcTypes;
+    private final int[] cumulativeWeights;
+    private final Map<RpcType, Recorder> recorders = new EnumMap<>(RpcType.class);
+    private final Map<RpcType, LongAdder> errors = new EnumMap<>(RpcType.class);
+    private final Semaphore slots;
+
+    private long measureStartNanos;
+    private long endNanos;
+
+    public LoadGenerator(LoadGeneratorConfig config) throws SSLException {
+        this.config = config;
+        this.pool = newPool(config);
+        // Inside hedging, so every attempt is traced on its own
+        this.phases = config.isTrace() ? new MetricsRegistry() : null;
+        Channel traced = phases != null
+                ? ClientInterceptors.intercept(pool, new ClientPhaseTracer(phases, config.getSlowCallMillis()))
+                : pool;
+        Channel compressed = config.getCompression().isEmpty()
+                ? traced
+                : ClientInterceptors.intercept(traced, new CompressionClientInterceptor(config.getCompression()));
+        if (config.getMaxAttempts() > 1) {
+            this.hedging = HedgingInterceptor.newBuilder()
+                    .forMethods(CalculatorServiceGrpc.getAddMethod(), CalculatorServiceGrpc.getSquareRootMethod(),
+                            GreetServiceGrpc.getGreetMethod(), GreetServiceGrpc.getGreetWithDeadlineMethod())
+                    .maxAttempts(config.getMaxAttempts())
+                    .hedgingDelay(config.getHedgingDelayMillis(), TimeUnit.MILLISECONDS)
+                    .hedgingPercentile(config.getHedgingPercentile())
+                    .build();
+            this.channel = ClientInterceptors.intercept(compressed, hedging);
+        } else {
+            this.hedging = null;
+            this.channel = compressed;
+        }
+
+        Map<RpcType, Integer> mix = config.getMix();
+        this.rpcTypes = mix.keySet().toArray(new RpcType[0]);
+        this.cumulativeWeights = new int[rpcTypes.length];
+        int total = 0;
+        for (int i = 0; i < rpcTypes.length; i++) {
+            total += mix.get(rpcTypes[i]);
+            cumulativeWeights[i] = total;
+            recorders.put(rpcTypes[i], new Recorder(3));
+            errors.put(rpcTypes[i], new LongAdder());
+        }
+
+        this.slots = new Semaphore(config.getOutstanding());
+    }
+
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        measureStartNanos = start + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+
+        if (config.getMode() == LoadGeneratorConfig.Mode.CLOSED) {
+            runClosedLoop();
+        } else {
+            runOpenLoop(start);
+        }
+
+        // Wait for the calls still in flight before reporting
+        if (!slots.tryAcquire(config.getOutstanding(), 30, TimeUnit.SECONDS)) {
+            System.out.println("Some calls did not complete within 30 seconds of the end of the run");
+        }
+
+        report();
+
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void runClosedLoop() throws InterruptedException {
+        for (int i = 0; i < config.getOutstanding(); i++) {
+            slots.acquire();
+            issueClosed();
+        }
+        long remaining = endNanos - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    // Each slot re-issues from the completion callback until the run is over
+    private void issueClosed() {
+        long start = System.nanoTime();
+        if (start - endNanos >= 0) {
+            slots.release();
+            return;
+        }
+        RpcType type = pick();
+        issue(type, start, this::issueClosed);
+    }
+
+    private void runOpenLoop(long start) throws InterruptedException {
+        // In double, so rates that do not divide a second do not drift
+        double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended - endNanos >= 0) {
+                return;
+            }
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            // Blocks while every slot is busy; the intended start time still counts
+            slots.acquire();
+            RpcType type = pick();
+            issue(type, intended, slots::release);
+        }
+    }
+
+    private void issue(RpcType type, long startNanos, Runnable next) {
+        try {
+            type.start(channel, config.getStreamSize(), success -> {
+                record(type, startNanos, success);
+                next.run();
+            });
+        } catch (RuntimeException e) {
+            record(type, startNanos, false);
+            next.run();
+        }
+    }
+
+    private void record(RpcType type, long startNanos, boolean success) {
+        if (startNanos - measureStartNanos < 0) {
+            return;
+        }
+        if (success) {
+            recorders.get(type).recordValue(System.nanoTime() - startNanos);
+        } else {
+            errors.get(type).increment();
+        }
+    }
+
+    private RpcType pick() {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        int r = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return rpcTypes[i];
+            }
+        }
+        return rpcTypes[rpcTypes.length - 1];
+    }
+
+    private void report() {
+        double seconds = config.getDurationSeconds();
+        Histogram all = new Histogram(3);
+        long allErrors = 0;
+
+        System.out.println();
+        System.out.println(config);
+        System.out.printf("%-28s %10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "rpc", "calls", "calls/s", "errors", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (RpcType type : rpcTypes) {
+            Histogram histogram = recorders.get(type).getIntervalHistogram();
+            long errorCount = errors.get(type).sum();
+            all.add(histogram);
+            allErrors += errorCount;
+            printRow(type.name(), histogram, errorCount, seconds);
+        }
+        if (rpcTypes.length > 1) {
+            printRow("ALL", all, allErrors, seconds);
+        }
+        if (hedging != null) {
+            System.out.println("Extra attempts: " + hedging);
+        }
+        if (phases != null) {
+            reportPhases();
+        }
+    }
+
+    // Phase percentiles per method, warm-up included
+    private void reportPhases() {
+        for (PhaseMetrics metrics : phases.getPhaseMetrics()) {
+            System.out.println();
+            System.out.printf("%-28s %10s %10s %10s %10s%n",
+                    metrics.getFullMethodName(), "p50 us", "p90 us", "p99 us", "max us");
+            for (int phase = 0; phase < metrics.getPhaseCount(); phase++) {
+                Histogram histogram = metrics.getSnapshot(phase);
+                System.out.printf("  %-26s %10.1f %10.1f %10.1f %10.1f%n",
+                        metrics.getPhase(phase),
+                        micros(histogram.getValueAtPercentile(50)),
+                        micros(histogram.getValueAtPercentile(90)),
+                        micros(histogram.getValueAtPercentile(99)),
+                        micros(histogram.getMaxValue()));
+            }
+            System.out.printf("  bytes sent %d wire / %d uncompressed, received %d wire / %d uncompressed%n",
+                    metrics.getSentWireBytes(), metrics.getSentUncompressedBytes(),
+                    metrics.getReceivedWireBytes(), metrics.getReceivedUncompressedBytes());
+        }
+    }
+
+    private static void printRow(String name, Histogram histogram, long errors, double seconds) {
+        System.out.printf("%-28s %10d %10.1f %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                errors,
+                micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(90)),
+                micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMaxValue()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static ChannelPool newPool(LoadGeneratorConfig config) throws SSLException {
+        ChannelPool.Builder builder = ChannelPool.newBuilder(config.getTarget())
+                .connectionsPerTarget(config.getChannels())
+                .policy(config.getPolicy())
+                .compressorRegistry(CompressionPolicy.compressorRegistry())
+                .decompressorRegistry(CompressionPolicy.decompressorRegistry());
+        if (config.getCaFile() != null) {
+            builder.sslContext(GrpcSslContexts.forClient().trustManager(new File(config.getCaFile())).build());
+        }
+        return builder.build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGeneratorConfig config;
+        try {
+            config = LoadGeneratorConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Load generator gRPC: " + config);
+        // Co-located mode: host the services in this JVM and measure the calls without a network
+        for (String target : TargetResolver.forSpec(config.getTarget()).resolve()) {
+            String name = TargetResolver.inProcessName(target);
+            if (name != null) {
+                MultiServiceServer.startInProcess(name);
+            }
+        }
+        new LoadGenerator(config).run();
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.didiyudha.grpc.loadgen;
+
+import com.github.didiyudha.grpc.client.ChannelPool;
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line options of the {@link LoadGenerator}, given as {@code --name=value}.
+ */
+public final class LoadGeneratorConfig {
+
+    public enum Mode {
+        /** Each slot issues its next call as soon as the previous one completes. */
+        CLOSED,
+        /** Calls are issued on a fixed schedule regardless of how fast the server answers. */
+        OPEN
+    }
+
+    // One call per nanosecond; intended start times are whole nanoseconds, so faster calls would share them
+    static final int MAX_RATE = 1_000_000_000;
+
+    static final String USAGE = "Usage: LoadGenerator [options]\n"
+            + "  --target=host:port,... servers to load, or file:path with one per line (default localhost:50055)\n"
+            + "                         inprocess:name hosts the services in this JVM and calls them without a network\n"
+            + "  --ca=file              trust this CA and use TLS (default plaintext)\n"
+            + "  --channels=n           connections per target (default 1)\n"
+            + "  --balancer=name        round_robin or least_outstanding across connections (default round_robin)\n"
+            + "  --outstanding=n        max concurrent calls in total, across all connections (default 10)\n"
+            + "  --mode=closed|open     closed loop or fixed-rate open loop (default closed)\n"
+            + "  --rate=n               calls per second across all channels, open loop only, at most 1e9 (default 1000)\n"
+            + "  --duration=s           measured seconds (default 30)\n"
+            + "  --warmup=s             seconds run before measuring (default 5)\n"
+            + "  --mix=rpc:w,...        weighted RPC mix, e.g. add:8,greet:2 (default add:1)\n"
+            + "  --stream-size=n        request messages per client-streaming call (default 10)\n"
+            + "  --max-attempts=n       hedge or retry add, squareRoot, greet and greetWithDeadline up to n attempts (default 1)\n"
+            + "  --hedging-delay-ms=n   send the next attempt after n ms, 0 only retries UNAVAILABLE (default 0)\n"
+            + "  --hedging-percentile=p derive the hedging delay from this latency percentile, e.g. 95 (default off)\n"
+            + "  --compression=m=e,...  compress requests of these methods, e.g. LongGreet=gzip (default none)\n"
+            + "  --compression-min-size=n  send smaller requests uncompressed (default 1024)\n"
+            + "  --trace=true|false     time each call's phases and print their percentiles per method (default false)\n"
+            + "  --slow-call-ms=n       print calls taking at least n ms with their phases, implies --trace (default 0: none)\n";
+
+    private String target = "localhost:50055";
+    private String caFile;
+    private int channels = 1;
+    private ChannelPool.Policy policy = ChannelPool.Policy.ROUND_ROBIN;
+    private int outstanding = 10;
+    private Mode mode = Mode.CLOSED;
+    private int rate = 1000;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private Map<RpcType, Integer> mix = new LinkedHashMap<>();
+    private int streamSize = 10;
+    private int maxAttempts = 1;
+    private int hedgingDelayMillis = 0;
+    private double hedgingPercentile = 0;
+    private String compressionSpec = "";
+    private int compressionMinSize = 1024;
+    private CompressionPolicy compression = CompressionPolicy.none();
+    private boolean trace;
+    private int slowCallMillis;
+
+    private LoadGeneratorConfig() {
+        mix.put(RpcType.ADD, 1);
+    }
+
+    public static LoadGeneratorConfig parse(String[] args) {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg + "\n" + USAGE);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "target":
+                    config.target = value;
+                    break;
+                case "ca":
+                    config.caFile = value;
+                    break;
+                case "channels":
+                    config.channels = positive(name, value);
+                    break;
+                case "balancer":
+                    config.policy = ChannelPool.Policy.valueOf(value.replace('-', '_').toUpperCase(Locale.ROOT));
+                    break;
+                case "outstanding":
+                    config.outstanding = positive(name, value);
+                    break;
+                case "mode":
+                    config.mode = Mode.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "rate":
+                    config.rate = positive(name, value);
+                    if (config.rate > MAX_RATE) {
+                        throw new IllegalArgumentException("--rate must be at most " + MAX_RATE + ", one call per nanosecond: " + value);
+                    }
+                    break;
+                case "duration":
+                    config.durationSeconds = positive(name, value);
+                    break;
+                case "warmup":
+                    config.warmupSeconds = nonNegative(name, value);
+                    break;
+                case "mix":
+                    config.mix = parseMix(value);
+                    break;
+                case "stream-size":
+                    config.streamSize = positive(name, value);
+                    break;
+                case "max-attempts":
+                    config.maxAttempts = positive(name, value);
+                    break;
+                case "hedging-delay-ms":
+                    config.hedgingDelayMillis = Integer.parseInt(value);
+                    break;
+                case "hedging-percentile":
+                    config.hedgingPercentile = Double.parseDouble(value);
+                    break;
+                case "compression":
+                    config.compressionSpec = value;
+                    break;
+                case "compression-min-size":
+                    config.compressionMinSize = Integer.parseInt(value);
+                    break;
+                case "trace":
+                    config.trace = Boolean.parseBoolean(value);
+                    break;
+                case "slow-call-ms":
+                    config.slowCallMillis = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: --" + name + "\n" + USAGE);
+            }
+        }
+        config.compression = CompressionPolicy.parse(config.compressionSpec, config.compressionMinSize);
+        return config;
+    }
+
+    private static Map<RpcType, Integer> parseMix(String value) {
+        Map<RpcType, Integer> mix = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = parts.length > 1 ? positive("mix", parts[1]) : 1;
+            mix.put(RpcType.parse(parts[0]), weight);
+        }
+        return mix;
+    }
+
+    private static int nonNegative(String name, String value) {
+        int n = Integer.parseInt(value);
+        if (n < 0) {
+            throw new IllegalArgumentException("--" + name + " must not be negative: " + value);
+        }
+        return n;
+    }
+
+    private static int positive(String name, String value) {
+        int n = Integer.parseInt(value);
+        if (n <= 0) {
+            throw new IllegalArgumentException("--" + name + " must be positive: " + value);
+        }
+        return n;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getCaFile() {
+        return caFile;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public ChannelPool.Policy getPolicy() {
+        return policy;
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public Map<RpcType, Integer> getMix() {
+        return mix;
+    }
+
+    public int getStreamSize() {
+        return streamSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getHedgingDelayMillis() {
+        return hedgingDelayMillis;
+    }
+
+    public double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    public CompressionPolicy getCompression() {
+        return compression;
+    }
+
+    public boolean isTrace() {
+        return trace || slowCallMillis > 0;
+    }
+
+    public int getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "target=" + target
+                + (caFile != null ? " (tls)" : "")
+                + ", channels=" + channels
+                + ", balancer=" + policy
+                + ", outstanding=" + outstanding
+                + ", mode=" + mode
+                + (mode == Mode.OPEN ? ", rate=" + rate + "/s" : "")
+                + ", duration=" + durationSeconds + "s"
+                + ", warmup=" + warmupSeconds + "s"
+                + ", mix=" + mix
+                + ", streamSize=" + streamSize
+                + (maxAttempts > 1
+                        ? ", maxAttempts=" + maxAttempts + ", hedgingDelay=" + hedgingDelayMillis + "ms"
+                        + (hedgingPercentile > 0 ? ", hedgingPercentile=" + hedgingPercentile : "")
+                        : "")
+                + (compression.isEmpty() ? "" : ", compression=" + compression)
+                + (isTrace() ? ", trace" + (slowCallMillis > 0 ? " slow>=" + slowCallMillis + "ms" : "") : "");
+    }
+}
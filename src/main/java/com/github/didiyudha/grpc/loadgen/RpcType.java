@@ -0,0 +1,197 @@
+package com.github.didiyudha.grpc.loadgen;
+
+import com.proto.calculator.*;
+import com.proto.greet.*;
+import io.grpc.Channel;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The RPCs the load generator can drive. Every call is issued on the async
+ * stub and reports its outcome through a {@link CallListener}, so no load
+ * generator thread ever blocks on a response.
+ */
+public enum RpcType {
+
+    ADD {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            CalculatorServiceGrpc.newStub(channel).add(CalculatorRequest.newBuilder()
+                    .setFirstNumber(3)
+                    .setSecondNumber(10)
+                    .build(), new CompletionObserver<>(listener));
+        }
+    },
+
+    SQUARE_ROOT {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            CalculatorServiceGrpc.newStub(channel).squareRoot(SquareRootRequest.newBuilder()
+                    .setNumber(10)
+                    .build(), new CompletionObserver<>(listener));
+        }
+    },
+
+    PRIME_NUMBER_DECOMPOSITION {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            CalculatorServiceGrpc.newStub(channel).primeNumberDecomposition(PrimeNumberDecompositionRequest.newBuilder()
+                    .setN(1234567890123456789L)
+                    .build(), new CompletionObserver<>(listener));
+        }
+    },
+
+    AVERAGE {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<AverageRequest> requests =
+                    CalculatorServiceGrpc.newStub(channel).average(new CompletionObserver<>(listener));
+            for (int i = 1; i <= streamSize; i++) {
+                requests.onNext(AverageRequest.newBuilder().setNumber(i).build());
+            }
+            requests.onCompleted();
+        }
+    },
+
+    FIND_MAX {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<FindMaxRequest> requests =
+                    CalculatorServiceGrpc.newStub(channel).findMax(new CompletionObserver<>(listener));
+            for (int i = 1; i <= streamSize; i++) {
+                requests.onNext(FindMaxRequest.newBuilder().setN(i).build());
+            }
+            requests.onCompleted();
+        }
+    },
+
+    ORDER_STATISTICS {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<OrderStatisticsRequest> requests =
+                    CalculatorServiceGrpc.newStub(channel).orderStatistics(new CompletionObserver<>(listener));
+            OrderStatisticsOptions options = OrderStatisticsOptions.newBuilder()
+                    .setTopK(10)
+                    .addQuantiles(0.5)
+                    .addQuantiles(0.99)
+                    .setChangesOnly(true)
+                    .build();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < streamSize; i++) {
+                OrderStatisticsRequest.Builder request = OrderStatisticsRequest.newBuilder()
+                        .addNumbers(random.nextLong(1_000_000));
+                if (i == 0) {
+                    request.setOptions(options);
+                }
+                requests.onNext(request.build());
+            }
+            requests.onCompleted();
+        }
+    },
+
+    GREET {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            GreetServiceGrpc.newStub(channel).greet(GreetRequest.newBuilder()
+                    .setGreeting(GREETING)
+                    .build(), new CompletionObserver<>(listener));
+        }
+    },
+
+    LONG_GREET {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<LongGreetRequest> requests =
+                    GreetServiceGrpc.newStub(channel).longGreet(new CompletionObserver<>(listener));
+            LongGreetRequest request = LongGreetRequest.newBuilder().setGreeting(GREETING).build();
+            for (int i = 0; i < streamSize; i++) {
+                requests.onNext(request);
+            }
+            requests.onCompleted();
+        }
+    },
+
+    LONG_GREET_CHUNKED {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<LongGreetRequest> requests =
+                    GreetServiceGrpc.newStub(channel).longGreetChunked(new CompletionObserver<>(listener));
+            LongGreetRequest request = LongGreetRequest.newBuilder().setGreeting(GREETING).build();
+            for (int i = 0; i < streamSize; i++) {
+                requests.onNext(request);
+            }
+            requests.onCompleted();
+        }
+    },
+
+    GREET_EVERYONE {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            StreamObserver<GreetEveryoneRequest> requests =
+                    GreetServiceGrpc.newStub(channel).greetEveryone(new CompletionObserver<>(listener));
+            GreetEveryoneRequest request = GreetEveryoneRequest.newBuilder().setGreeting(GREETING).build();
+            for (int i = 0; i < streamSize; i++) {
+                requests.onNext(request);
+            }
+            requests.onCompleted();
+        }
+    },
+
+    GREET_WITH_DEADLINE {
+        @Override
+        void start(Channel channel, int streamSize, CallListener listener) {
+            GreetServiceGrpc.newStub(channel).greetWithDeadline(GreetWithDeadlineRequest.newBuilder()
+                    .setGreeting(GREETING)
+                    .build(), new CompletionObserver<>(listener));
+        }
+    };
+
+    private static final Greeting GREETING = Greeting.newBuilder()
+            .setFirstName("Didi")
+            .setLastName("Yudha")
+            .build();
+
+    /**
+     * Starts one call. Streaming calls send {@code streamSize} request messages.
+     */
+    abstract void start(Channel channel, int streamSize, CallListener listener);
+
+    /**
+     * Parses names such as {@code add}, {@code squareRoot} or {@code GREET_EVERYONE}.
+     */
+    public static RpcType parse(String name) {
+        String normalized = name.trim()
+                .replaceAll("([a-z])([A-Z])", "$1_$2")
+                .replace('-', '_')
+                .toUpperCase(Locale.ROOT);
+        return valueOf(normalized);
+    }
+
+    interface CallListener {
+        void onComplete(boolean success);
+    }
+
+    private static final class CompletionObserver<T> implements StreamObserver<T> {
+        private final CallListener listener;
+
+        CompletionObserver(CallListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onNext(T value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            listener.onComplete(false);
+        }
+
+        @Override
+        public void onCompleted() {
+            listener.onComplete(true);
+        }
+    }
+}
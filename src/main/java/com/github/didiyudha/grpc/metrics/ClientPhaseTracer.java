@@ -0,0 +1,194 @@
+package com.github.didiyudha.grpc.metrics;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * The client side of {@link ServerPhaseTracer}: splits every call into phases
+ * from a {@link ClientStreamTracer} and a listener around the caller's:
+ *
+ * <pre>
+ * pick         call started until it has a stream: load balancing and connecting
+ * serialize    requests being serialized and framed
+ * wait         last request sent until the response headers arrive: network and server
+ * receive      response headers until the last response message is read
+ * deserialize  response read until the caller gets it: parsing, plus the hop to the executor
+ * total        call started until the caller sees it closed
+ * </pre>
+ *
+ * Phases go into the histograms of {@code registry} per method, and slow
+ * calls are printed. Install it directly on the channel, inside hedging, so
+ * every attempt is traced as a call of its own.
+ */
+public final class ClientPhaseTracer implements ClientInterceptor {
+
+    static final String[] PHASES = {"pick", "serialize", "wait", "receive", "deserialize", "total"};
+    private static final int PICK = 0;
+    private static final int SERIALIZE = 1;
+    private static final int WAIT = 2;
+    private static final int RECEIVE = 3;
+    private static final int DESERIALIZE = 4;
+    private static final int TOTAL = 5;
+
+    private final MetricsRegistry registry;
+    private final SlowCallLog slowCalls;
+
+    /**
+     * @param slowCallMillis calls taking at least this long are printed; 0 prints none
+     */
+    public ClientPhaseTracer(MetricsRegistry registry, long slowCallMillis) {
+        this.registry = registry;
+        this.slowCalls = new SlowCallLog("client", slowCallMillis);
+        registry.registerCounter("grpc_client_slow_calls_total", "", slowCalls::getCount);
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        CallTrace trace = new CallTrace(method.getFullMethodName());
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                next.newCall(method, callOptions.withStreamTracerFactory(trace))) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                trace.startNanos = System.nanoTime();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        trace.messageDelivered();
+                        try {
+                            super.onMessage(message);
+                        } finally {
+                            trace.messageHandled();
+                        }
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        record(trace, status);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+
+    // Runs on the call's executor after the stream closed
+    private void record(CallTrace trace, Status status) {
+        long now = System.nanoTime();
+        long created = trace.streamCreatedNanos != 0 ? trace.streamCreatedNanos : now;
+        long sent = trace.lastSentNanos != 0 ? trace.lastSentNanos : created;
+        long headers = trace.headersNanos != 0 ? trace.headersNanos : now;
+        long read = trace.lastReadNanos != 0 ? trace.lastReadNanos : headers;
+        long[] phases = new long[PHASES.length];
+        phases[PICK] = created - trace.startNanos;
+        phases[SERIALIZE] = trace.serializeNanos;
+        phases[WAIT] = Math.max(0, headers - sent);
+        phases[RECEIVE] = Math.max(0, read - headers);
+        phases[DESERIALIZE] = trace.deserializeNanos;
+        phases[TOTAL] = now - trace.startNanos;
+
+        PhaseMetrics metrics = registry.forPhases(trace.fullMethodName, PHASES);
+        for (int i = 0; i < phases.length; i++) {
+            metrics.record(i, phases[i]);
+        }
+        metrics.addBytes(trace.receivedWire, trace.receivedUncompressed, trace.sentWire, trace.sentUncompressed);
+        if (slowCalls.isSlow(phases[TOTAL])) {
+            slowCalls.log(metrics, status.getCode(), phases,
+                    trace.receivedWire, trace.receivedUncompressed, trace.sentWire, trace.sentUncompressed);
+        }
+    }
+
+    /**
+     * Timestamps of one call, also the factory of its stream tracer. Requests
+     * are sent from the caller's thread, the transport callbacks run on the
+     * event loop and the listener on the call's executor.
+     */
+    private static final class CallTrace extends ClientStreamTracer.Factory {
+
+        final String fullMethodName;
+        volatile long startNanos;
+        volatile long streamCreatedNanos;
+        volatile long outboundStartNanos;
+        volatile long serializeNanos;
+        volatile long lastSentNanos;
+        volatile long headersNanos;
+        volatile long lastReadNanos;
+        volatile long receivedWire;
+        volatile long receivedUncompressed;
+        volatile long sentWire;
+        volatile long sentUncompressed;
+
+        // Executor only
+        long deserializeNanos;
+        long lastHandledNanos;
+
+        CallTrace(String fullMethodName) {
+            this.fullMethodName = fullMethodName;
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+            streamCreatedNanos = System.nanoTime();
+            return new ClientStreamTracer() {
+                @Override
+                public void outboundMessage(int seqNo) {
+                    outboundStartNanos = System.nanoTime();
+                }
+
+                @Override
+                public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+                    long now = System.nanoTime();
+                    serializeNanos += now - outboundStartNanos;
+                    lastSentNanos = now;
+                }
+
+                @Override
+                public void inboundHeaders() {
+                    headersNanos = System.nanoTime();
+                }
+
+                @Override
+                public void inboundMessageRead(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+                    lastReadNanos = System.nanoTime();
+                }
+
+                @Override
+                public void inboundWireSize(long bytes) {
+                    receivedWire += bytes;
+                }
+
+                @Override
+                public void inboundUncompressedSize(long bytes) {
+                    receivedUncompressed += bytes;
+                }
+
+                @Override
+                public void outboundWireSize(long bytes) {
+                    sentWire += bytes;
+                }
+
+                @Override
+                public void outboundUncompressedSize(long bytes) {
+                    sentUncompressed += bytes;
+                }
+            };
+        }
+
+        // Parsing happens right before delivery; waiting while the caller handles the previous message is not parsing
+        void messageDelivered() {
+            deserializeNanos += Math.max(0, System.nanoTime() - Math.max(lastReadNanos, lastHandledNanos));
+        }
+
+        void messageHandled() {
+            lastHandledNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.didiyudha.grpc.metrics;
+
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram for one gRPC method.
+ *
+ * Recording never allocates or locks: counters are {@link LongAdder}s, which
+ * stripe updates across cells under contention, and latencies go into a
+ * fixed-range HdrHistogram {@link Recorder}, whose writers are wait-free.
+ * Readers fold the recorder's interval histogram into a cumulative one.
+ */
+public final class MethodMetrics {
+
+    private static final long MAX_TRACKED_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final String fullMethodName;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder[] statusCounts = new LongAdder[CODES.length];
+    private final Recorder latency = new Recorder(1, MAX_TRACKED_LATENCY_NANOS, 2);
+
+    private final Histogram cumulativeLatency = new Histogram(1, MAX_TRACKED_LATENCY_NANOS, 2);
+    private Histogram intervalLatency;
+
+    MethodMetrics(String fullMethodName) {
+        this.fullMethodName = fullMethodName;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    public String getFullMethodName() {
+        return fullMethodName;
+    }
+
+    void callStarted() {
+        calls.increment();
+    }
+
+    void messageReceived() {
+        messagesReceived.increment();
+    }
+
+    void messageSent() {
+        messagesSent.increment();
+    }
+
+    void callClosed(Status.Code code, long latencyNanos) {
+        statusCounts[code.ordinal()].increment();
+        latency.recordValue(Math.max(1, Math.min(latencyNanos, MAX_TRACKED_LATENCY_NANOS)));
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getStatusCount(Status.Code code) {
+        return statusCounts[code.ordinal()].sum();
+    }
+
+    /**
+     * Returns a copy of the latency histogram since start, in nanoseconds.
+     */
+    public synchronized Histogram getLatencySnapshot() {
+        intervalLatency = latency.getIntervalHistogram(intervalLatency);
+        cumulativeLatency.add(intervalLatency);
+        return cumulativeLatency.copy();
+    }
+}
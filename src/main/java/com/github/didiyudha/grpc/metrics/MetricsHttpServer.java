@@ -0,0 +1,163 @@
+package com.github.didiyudha.grpc.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves a {@link MetricsRegistry} as plain text in the Prometheus exposition
+ * format on {@code http://host:port/metrics}. Runs on the JDK's built-in HTTP
+ * server with a single thread, so scraping never competes with gRPC threads
+ * for more than one core.
+ */
+public final class MetricsHttpServer {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final HttpServer server;
+    private final MetricsRegistry registry;
+
+    public MetricsHttpServer(int port, MetricsRegistry registry) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Metrics available on http://localhost:" + getPort() + "/metrics");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render(registry).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static String render(MetricsRegistry registry) {
+        List<MethodMetrics> methods = registry.getMethods();
+        StringBuilder out = new StringBuilder();
+
+        // Prometheus wants each metric family as one contiguous group
+        out.append("# TYPE grpc_server_calls_total counter\n");
+        for (MethodMetrics metrics : methods) {
+            line(out, "grpc_server_calls_total", label(metrics), metrics.getCalls());
+        }
+
+        out.append("# TYPE grpc_server_status_total counter\n");
+        for (MethodMetrics metrics : methods) {
+            for (Status.Code code : Status.Code.values()) {
+                long count = metrics.getStatusCount(code);
+                if (count > 0) {
+                    line(out, "grpc_server_status_total", label(metrics) + ",code=\"" + code + "\"", count);
+                }
+            }
+        }
+
+        out.append("# TYPE grpc_server_messages_received_total counter\n");
+        for (MethodMetrics metrics : methods) {
+            line(out, "grpc_server_messages_received_total", label(metrics), metrics.getMessagesReceived());
+        }
+
+        out.append("# TYPE grpc_server_messages_sent_total counter\n");
+        for (MethodMetrics metrics : methods) {
+            line(out, "grpc_server_messages_sent_total", label(metrics), metrics.getMessagesSent());
+        }
+
+        out.append("# TYPE grpc_server_latency_seconds summary\n");
+        StringBuilder max = new StringBuilder("# TYPE grpc_server_latency_seconds_max gauge\n");
+        for (MethodMetrics metrics : methods) {
+            Histogram latency = metrics.getLatencySnapshot();
+            for (double quantile : QUANTILES) {
+                line(out, "grpc_server_latency_seconds", label(metrics) + ",quantile=\"" + quantile + "\"",
+                        seconds(latency.getValueAtPercentile(quantile * 100)));
+            }
+            line(out, "grpc_server_latency_seconds_count", label(metrics), latency.getTotalCount());
+            line(max, "grpc_server_latency_seconds_max", label(metrics), seconds(latency.getMaxValue()));
+        }
+        out.append(max);
+
+        List<PhaseMetrics> phases = registry.getPhaseMetrics();
+        if (!phases.isEmpty()) {
+            renderPhases(out, phases);
+        }
+
+        // Sampled metrics, grouped by name in registration order
+        Map<String, List<SampledMetric>> families = new LinkedHashMap<>();
+        for (SampledMetric metric : registry.getSampled()) {
+            families.computeIfAbsent(metric.getName(), name -> new ArrayList<>()).add(metric);
+        }
+        for (List<SampledMetric> family : families.values()) {
+            SampledMetric first = family.get(0);
+            out.append("# TYPE ").append(first.getName()).append(' ')
+                    .append(first.getType().name().toLowerCase(Locale.ROOT)).append('\n');
+            for (SampledMetric metric : family) {
+                line(out, metric.getName(), metric.getLabels(), metric.getValue());
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderPhases(StringBuilder out, List<PhaseMetrics> phases) {
+        out.append("# TYPE grpc_server_phase_seconds summary\n");
+        for (PhaseMetrics metrics : phases) {
+            String method = "method=\"" + metrics.getFullMethodName() + "\"";
+            for (int phase = 0; phase < metrics.getPhaseCount(); phase++) {
+                String labels = method + ",phase=\"" + metrics.getPhase(phase) + "\"";
+                Histogram histogram = metrics.getSnapshot(phase);
+                for (double quantile : QUANTILES) {
+                    line(out, "grpc_server_phase_seconds", labels + ",quantile=\"" + quantile + "\"",
+                            seconds(histogram.getValueAtPercentile(quantile * 100)));
+                }
+                line(out, "grpc_server_phase_seconds_count", labels, histogram.getTotalCount());
+            }
+        }
+
+        out.append("# TYPE grpc_server_bytes_total counter\n");
+        for (PhaseMetrics metrics : phases) {
+            String method = "method=\"" + metrics.getFullMethodName() + "\"";
+            line(out, "grpc_server_bytes_total", method + ",direction=\"received\",size=\"wire\"",
+                    metrics.getReceivedWireBytes());
+            line(out, "grpc_server_bytes_total", method + ",direction=\"received\",size=\"uncompressed\"",
+                    metrics.getReceivedUncompressedBytes());
+            line(out, "grpc_server_bytes_total", method + ",direction=\"sent\",size=\"wire\"",
+                    metrics.getSentWireBytes());
+            line(out, "grpc_server_bytes_total", method + ",direction=\"sent\",size=\"uncompressed\"",
+                    metrics.getSentUncompressedBytes());
+        }
+    }
+
+    private static String label(MethodMetrics metrics) {
+        return "method=\"" + metrics.getFullMethodName() + "\"";
+    }
+
+    private static void line(StringBuilder out, String name, String labels, Object value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.didiyudha.grpc.metrics;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Records call counts, status codes, message counts and latency for every
+ * call into a {@link MetricsRegistry}.
+ */
+public final class MetricsInterceptor implements ServerInterceptor {
+
+    private final MetricsRegistry registry;
+
+    public MetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics metrics = registry.forMethod(call.getMethodDescriptor().getFullMethodName());
+        metrics.callStarted();
+
+        MetricsServerCall<ReqT, RespT> metricsCall = new MetricsServerCall<>(call, metrics);
+        ServerCall.Listener<ReqT> listener = next.startCall(metricsCall, headers);
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                metrics.messageReceived();
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                metricsCall.closed(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static final class MetricsServerCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<MetricsServerCall> CLOSED =
+                AtomicIntegerFieldUpdater.newUpdater(MetricsServerCall.class, "closed");
+
+        private final MethodMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private volatile int closed;
+
+        MetricsServerCall(ServerCall<ReqT, RespT> delegate, MethodMetrics metrics) {
+            super(delegate);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            metrics.messageSent();
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            closed(status.getCode());
+            super.close(status, trailers);
+        }
+
+        // A cancelled call may still be closed by the handler; only the first outcome counts
+        void closed(Status.Code code) {
+            if (CLOSED.compareAndSet(this, 0, 1)) {
+                metrics.callClosed(code, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
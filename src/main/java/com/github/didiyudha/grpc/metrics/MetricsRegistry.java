@@ -0,0 +1,77 @@
+package com.github.didiyudha.grpc.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-method metrics, keyed by full method name, per-method call phases when
+ * calls are traced, plus sampled counters and gauges registered by other
+ * components.
+ */
+public final class MetricsRegistry {
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PhaseMetrics> phases = new ConcurrentHashMap<>();
+    private final List<SampledMetric> sampled = new CopyOnWriteArrayList<>();
+
+    public MethodMetrics forMethod(String fullMethodName) {
+        // get() first: Java 8's computeIfAbsent locks the bin even when the key exists
+        MethodMetrics metrics = methods.get(fullMethodName);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(fullMethodName, MethodMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of every method seen so far, sorted by method name.
+     */
+    public List<MethodMetrics> getMethods() {
+        Collection<MethodMetrics> values = methods.values();
+        List<MethodMetrics> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.comparing(MethodMetrics::getFullMethodName));
+        return sorted;
+    }
+
+    /**
+     * Returns the phase metrics of a method, created with {@code phaseNames} on first use.
+     */
+    public PhaseMetrics forPhases(String fullMethodName, String[] phaseNames) {
+        PhaseMetrics metrics = phases.get(fullMethodName);
+        if (metrics == null) {
+            metrics = phases.computeIfAbsent(fullMethodName, name -> new PhaseMetrics(name, phaseNames));
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the phase metrics of every traced method, sorted by method name.
+     */
+    public List<PhaseMetrics> getPhaseMetrics() {
+        List<PhaseMetrics> sorted = new ArrayList<>(phases.values());
+        sorted.sort(Comparator.comparing(PhaseMetrics::getFullMethodName));
+        return sorted;
+    }
+
+    public void registerCounter(String name, String labels, LongSupplier value) {
+        sampled.add(new SampledMetric(name, SampledMetric.Type.COUNTER, labels, value));
+    }
+
+    public void registerGauge(String name, String labels, LongSupplier value) {
+        sampled.add(new SampledMetric(name, SampledMetric.Type.GAUGE, labels, value));
+    }
+
+    /**
+     * Returns the registered counters and gauges in registration order.
+     */
+    public List<SampledMetric> getSampled() {
+        return Collections.unmodifiableList(sampled);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.didiyudha.grpc.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms for the phases of one gRPC method's calls, such as
+ * queueing or serialization, and the bytes its messages took on the wire and
+ * before compression. Recording is wait-free, as in {@link MethodMetrics}.
+ */
+public final class PhaseMetrics {
+
+    private static final long MAX_TRACKED_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final String fullMethodName;
+    private final String[] phases;
+    private final Recorder[] recorders;
+    private final Histogram[] cumulative;
+    private final Histogram[] intervals;
+    private final LongAdder receivedWireBytes = new LongAdder();
+    private final LongAdder receivedUncompressedBytes = new LongAdder();
+    private final LongAdder sentWireBytes = new LongAdder();
+    private final LongAdder sentUncompressedBytes = new LongAdder();
+
+    PhaseMetrics(String fullMethodName, String[] phases) {
+        this.fullMethodName = fullMethodName;
+        this.phases = phases.clone();
+        this.recorders = new Recorder[phases.length];
+        this.cumulative = new Histogram[phases.length];
+        this.intervals = new Histogram[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            recorders[i] = new Recorder(1, MAX_TRACKED_NANOS, 2);
+            cumulative[i] = new Histogram(1, MAX_TRACKED_NANOS, 2);
+        }
+    }
+
+    public String getFullMethodName() {
+        return fullMethodName;
+    }
+
+    public int getPhaseCount() {
+        return phases.length;
+    }
+
+    public String getPhase(int phase) {
+        return phases[phase];
+    }
+
+    void record(int phase, long nanos) {
+        recorders[phase].recordValue(Math.max(0, Math.min(nanos, MAX_TRACKED_NANOS)));
+    }
+
+    /**
+     * Counts the bytes of one call. In-process calls have no wire format and count none.
+     */
+    void addBytes(long receivedWire, long receivedUncompressed, long sentWire, long sentUncompressed) {
+        receivedWireBytes.add(receivedWire);
+        receivedUncompressedBytes.add(receivedUncompressed);
+        sentWireBytes.add(sentWire);
+        sentUncompressedBytes.add(sentUncompressed);
+    }
+
+    public long getReceivedWireBytes() {
+        return receivedWireBytes.sum();
+    }
+
+    public long getReceivedUncompressedBytes() {
+        return receivedUncompressedBytes.sum();
+    }
+
+    public long getSentWireBytes() {
+        return sentWireBytes.sum();
+    }
+
+    public long getSentUncompressedBytes() {
+        return sentUncompressedBytes.sum();
+    }
+
+    /**
+     * Returns a copy of the histogram of {@code phase} since start, in nanoseconds.
+     */
+    public synchronized Histogram getSnapshot(int phase) {
+        intervals[phase] = recorders[phase].getIntervalHistogram(intervals[phase]);
+        cumulative[phase].add(intervals[phase]);
+        return cumulative[phase].copy();
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.didiyudha.grpc.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value owned by another component, such as a cache or a limiter, and read
+ * only when metrics are rendered.
+ */
+public final class SampledMetric {
+
+    public enum Type {
+        COUNTER,
+        GAUGE
+    }
+
+    private final String name;
+    private final Type type;
+    private final String labels;
+    private final LongSupplier value;
+
+    SampledMetric(String name, Type type, String labels, LongSupplier value) {
+        this.name = name;
+        this.type = type;
+        this.labels = labels;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Label pairs in exposition syntax, e.g. {@code cache="add"}; empty for none.
+     */
+    public String getLabels() {
+        return labels;
+    }
+
+    public long getValue() {
+        return value.getAsLong();
+    }
+}
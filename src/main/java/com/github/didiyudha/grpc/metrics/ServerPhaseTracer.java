@@ -0,0 +1,274 @@
+package com.github.didiyudha.grpc.metrics;
+
+import io.grpc.Context;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+
+/**
+ * Splits every call into phases, from a {@link ServerStreamTracer} on the
+ * transport and a listener around the service:
+ *
+ * <pre>
+ * queue        stream created until the executor starts the call
+ * deserialize  request read off the wire until the service gets it: parsing, plus the hop to the executor
+ * handler      time in the service's callbacks, less its own serialization
+ * serialize    responses being serialized and framed
+ * send         from close until the stream is done: trailers, flushing and flow control
+ * total        stream created until the stream is done
+ * </pre>
+ *
+ * Each phase goes into a histogram per method, together with the bytes
+ * received and sent on the wire and before compression, and calls slower
+ * than the threshold are printed with their breakdown. A call costs about ten
+ * {@link System#nanoTime()} reads and a few small objects, cheap enough to
+ * leave on. Register it with {@code addStreamTracerFactory} and as the
+ * outermost interceptor, so its listener sees messages right after parsing.
+ */
+public final class ServerPhaseTracer extends ServerStreamTracer.Factory implements ServerInterceptor {
+
+    static final String[] PHASES = {"queue", "deserialize", "handler", "serialize", "send", "total"};
+    private static final int QUEUE = 0;
+    private static final int DESERIALIZE = 1;
+    private static final int HANDLER = 2;
+    private static final int SERIALIZE = 3;
+    private static final int SEND = 4;
+    private static final int TOTAL = 5;
+
+    private static final Context.Key<CallTrace> TRACE = Context.key("phase-trace");
+
+    private final MetricsRegistry registry;
+    private final SlowCallLog slowCalls;
+
+    /**
+     * @param slowCallMillis calls taking at least this long are printed; 0 prints none
+     */
+    public ServerPhaseTracer(MetricsRegistry registry, long slowCallMillis) {
+        this.registry = registry;
+        this.slowCalls = new SlowCallLog("server", slowCallMillis);
+        registry.registerCounter("grpc_server_slow_calls_total", "", slowCalls::getCount);
+    }
+
+    @Override
+    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+        return new CallTrace(fullMethodName);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        CallTrace trace = TRACE.get();
+        if (trace == null) {
+            // Not installed as a stream tracer factory on this server
+            return next.startCall(call, headers);
+        }
+        ServerCall.Listener<ReqT> listener = next.startCall(
+                new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+                    @Override
+                    public void close(Status status, Metadata trailers) {
+                        trace.closing();
+                        super.close(status, trailers);
+                    }
+                }, headers);
+        return new TracedListener<>(listener, trace);
+    }
+
+    private final class TracedListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+
+        private final CallTrace trace;
+
+        TracedListener(ServerCall.Listener<ReqT> delegate, CallTrace trace) {
+            super(delegate);
+            this.trace = trace;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            trace.messageDelivered();
+            trace.enter();
+            try {
+                super.onMessage(message);
+            } finally {
+                trace.exit();
+            }
+        }
+
+        @Override
+        public void onHalfClose() {
+            trace.enter();
+            try {
+                super.onHalfClose();
+            } finally {
+                trace.exit();
+            }
+        }
+
+        @Override
+        public void onReady() {
+            trace.enter();
+            try {
+                super.onReady();
+            } finally {
+                trace.exit();
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            record(trace);
+            super.onCancel();
+        }
+
+        @Override
+        public void onComplete() {
+            record(trace);
+            super.onComplete();
+        }
+    }
+
+    // Runs on the executor after every other callback and after the stream closed
+    private void record(CallTrace trace) {
+        long now = System.nanoTime();
+        long closed = trace.closedNanos != 0 ? trace.closedNanos : now;
+        long started = trace.startedNanos != 0 ? trace.startedNanos : closed;
+        long[] phases = new long[PHASES.length];
+        phases[QUEUE] = started - trace.createdNanos;
+        phases[DESERIALIZE] = trace.deserializeNanos;
+        phases[HANDLER] = trace.handlerNanos;
+        phases[SERIALIZE] = trace.serializeNanos;
+        phases[SEND] = trace.closingNanos != 0 ? closed - trace.closingNanos : 0;
+        phases[TOTAL] = closed - trace.createdNanos;
+
+        PhaseMetrics metrics = registry.forPhases(trace.fullMethodName, PHASES);
+        for (int i = 0; i < phases.length; i++) {
+            metrics.record(i, phases[i]);
+        }
+        metrics.addBytes(trace.receivedWire, trace.receivedUncompressed, trace.sentWire, trace.sentUncompressed);
+        if (slowCalls.isSlow(phases[TOTAL])) {
+            Status status = trace.status;
+            slowCalls.log(metrics, status != null ? status.getCode() : Status.Code.CANCELLED, phases,
+                    trace.receivedWire, trace.receivedUncompressed, trace.sentWire, trace.sentUncompressed);
+        }
+    }
+
+    /**
+     * Timestamps of one call. Transport callbacks run on the event loop and
+     * listener callbacks on the executor, one at a time; responses may be
+     * sent from any thread, but never concurrently.
+     */
+    private static final class CallTrace extends ServerStreamTracer {
+
+        final String fullMethodName;
+        final long createdNanos = System.nanoTime();
+        volatile long startedNanos;
+        volatile long lastReadNanos;
+        volatile long closingNanos;
+        volatile long closedNanos;
+        volatile Status status;
+        volatile long receivedWire;
+        volatile long receivedUncompressed;
+        volatile long sentWire;
+        volatile long sentUncompressed;
+
+        volatile long serializeNanos;
+        volatile long outboundStartNanos;
+        volatile Thread callbackThread;
+        volatile long callbackSerializeNanos;
+
+        // Executor only
+        long deserializeNanos;
+        long handlerNanos;
+        long callbackStartNanos;
+        long lastCallbackEndNanos;
+
+        CallTrace(String fullMethodName) {
+            this.fullMethodName = fullMethodName;
+        }
+
+        @Override
+        public Context filterContext(Context context) {
+            return context.withValue(TRACE, this);
+        }
+
+        @Override
+        public void serverCallStarted(ServerCallInfo<?, ?> callInfo) {
+            startedNanos = System.nanoTime();
+        }
+
+        @Override
+        public void inboundMessageRead(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+            lastReadNanos = System.nanoTime();
+        }
+
+        @Override
+        public void outboundMessage(int seqNo) {
+            outboundStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+            long nanos = System.nanoTime() - outboundStartNanos;
+            serializeNanos += nanos;
+            if (Thread.currentThread() == callbackThread) {
+                callbackSerializeNanos += nanos;
+            }
+        }
+
+        @Override
+        public void inboundWireSize(long bytes) {
+            receivedWire += bytes;
+        }
+
+        @Override
+        public void inboundUncompressedSize(long bytes) {
+            receivedUncompressed += bytes;
+        }
+
+        @Override
+        public void outboundWireSize(long bytes) {
+            sentWire += bytes;
+        }
+
+        @Override
+        public void outboundUncompressedSize(long bytes) {
+            sentUncompressed += bytes;
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+            this.status = status;
+            closedNanos = System.nanoTime();
+        }
+
+        // Parsing happens right before delivery; waiting behind an earlier callback is not parsing
+        void messageDelivered() {
+            long now = System.nanoTime();
+            long from = Math.max(lastReadNanos, Math.max(startedNanos, lastCallbackEndNanos));
+            deserializeNanos += Math.max(0, now - from);
+        }
+
+        void enter() {
+            callbackSerializeNanos = 0;
+            callbackThread = Thread.currentThread();
+            callbackStartNanos = System.nanoTime();
+        }
+
+        void exit() {
+            long now = System.nanoTime();
+            callbackThread = null;
+            handlerNanos += Math.max(0, now - callbackStartNanos - callbackSerializeNanos);
+            lastCallbackEndNanos = now;
+        }
+
+        void closing() {
+            if (closingNanos == 0) {
+                closingNanos = System.nanoTime();
+            }
+        }
+    }
+}
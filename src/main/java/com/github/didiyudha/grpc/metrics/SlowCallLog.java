@@ -0,0 +1,67 @@
+package com.github.didiyudha.grpc.metrics;
+
+import io.grpc.Status;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prints calls slower than a threshold with their phase breakdown. At most
+ * {@value #MAX_LINES_PER_SECOND} lines are printed per second, so an overload
+ * does not turn into a logging storm; the rest are only counted.
+ */
+final class SlowCallLog {
+
+    private static final int MAX_LINES_PER_SECOND = 10;
+
+    private final String side;
+    private final long thresholdNanos;
+    private final LongAdder slowCalls = new LongAdder();
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicInteger linesThisSecond = new AtomicInteger();
+
+    /**
+     * @param thresholdMillis calls taking at least this long are slow; 0 disables the log
+     */
+    SlowCallLog(String side, long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("Slow call threshold must not be negative: " + thresholdMillis);
+        }
+        this.side = side;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    boolean isSlow(long totalNanos) {
+        return thresholdNanos > 0 && totalNanos >= thresholdNanos;
+    }
+
+    long getCount() {
+        return slowCalls.sum();
+    }
+
+    void log(PhaseMetrics metrics, Status.Code code, long[] phaseNanos,
+             long receivedWire, long receivedUncompressed, long sentWire, long sentUncompressed) {
+        slowCalls.increment();
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long previous = currentSecond.get();
+        if (previous != second && currentSecond.compareAndSet(previous, second)) {
+            linesThisSecond.set(0);
+        }
+        if (linesThisSecond.incrementAndGet() > MAX_LINES_PER_SECOND) {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder("Slow ").append(side).append(" call ")
+                .append(metrics.getFullMethodName()).append(' ').append(code);
+        for (int i = 0; i < phaseNanos.length; i++) {
+            line.append(' ').append(metrics.getPhase(i)).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMicros(phaseNanos[i])).append("us");
+        }
+        // Wire bytes over uncompressed bytes
+        line.append(" received=").append(receivedWire).append('/').append(receivedUncompressed).append('B')
+                .append(" sent=").append(sentWire).append('/').append(sentUncompressed).append('B');
+        System.out.println(line);
+    }
+}
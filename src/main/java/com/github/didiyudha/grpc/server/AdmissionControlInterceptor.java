@@ -0,0 +1,291 @@
+package com.github.didiyudha.grpc.server;
+
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of calls in flight with an adaptive, Vegas-style
+ * limit and rejects calls over it with RESOURCE_EXHAUSTED instead of letting
+ * them queue.
+ *
+ * Completed calls add their latency to counters of their method. Once per
+ * window, each method's average latency in the window is compared with the
+ * lowest latency recently seen for the same method; the ratio estimates how
+ * many calls are queued behind the limit. A short queue raises the limit, a
+ * long one lowers it. Comparing each method only with itself keeps cheap and
+ * expensive methods from skewing the estimate. The limit is recomputed by
+ * whichever completing call first sees the window end, so the others only
+ * pay for a few uncontended adds and never wait on a lock.
+ *
+ * A method may be given a share of the limit in percent. Once calls in
+ * flight reach that share, its new calls are shed while methods with a larger
+ * share are still admitted, so expensive methods are shed first.
+ *
+ * Unary and server streaming calls are limited, but only unary latencies
+ * feed the estimate since a stream's duration depends on its reader. Client
+ * and bidi streams are long lived and pass through untouched.
+ */
+public final class AdmissionControlInterceptor implements ServerInterceptor {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final int BASELINE_RESET_WINDOWS = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Map<String, Integer> sharePercent;
+    private final MetricsRegistry registry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<String, MethodState> methods = new ConcurrentHashMap<>();
+    private final LongAdder shed = new LongAdder();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    // Guarded by updating
+    private double estimatedLimit;
+
+    private volatile int limit;
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile boolean limitUsed;
+
+    /**
+     * @param sharePercent share of the limit per bare method name, e.g. {@code PrimeNumberDecomposition};
+     *                     methods not listed may use all of it
+     */
+    public AdmissionControlInterceptor(int initialLimit, int minLimit, int maxLimit,
+                                       Map<String, Integer> sharePercent, MetricsRegistry registry) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max: "
+                    + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.sharePercent = new HashMap<>(sharePercent);
+        this.registry = registry;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+
+        registry.registerGauge("grpc_server_concurrency_limit", "", () -> limit);
+        registry.registerGauge("grpc_server_concurrency_in_flight", "", inFlight::get);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getShed() {
+        return shed.sum();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodDescriptor.MethodType type = call.getMethodDescriptor().getType();
+        if (type != MethodDescriptor.MethodType.UNARY && type != MethodDescriptor.MethodType.SERVER_STREAMING) {
+            return next.startCall(call, headers);
+        }
+
+        MethodState method = forMethod(call.getMethodDescriptor().getFullMethodName());
+        if (!tryAcquire(method.share)) {
+            shed.increment();
+            method.shed.increment();
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("Server is over its concurrency limit"),
+                    new Metadata());
+            return new ServerCall.Listener<ReqT>() {
+            };
+        }
+
+        LimitedServerCall<ReqT, RespT> limitedCall = new LimitedServerCall<>(call, this, method,
+                type == MethodDescriptor.MethodType.UNARY);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(limitedCall, headers);
+        } catch (RuntimeException e) {
+            limitedCall.release(false);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onCancel() {
+                limitedCall.release(false);
+                super.onCancel();
+            }
+        };
+    }
+
+    private MethodState forMethod(String fullMethodName) {
+        MethodState state = methods.get(fullMethodName);
+        if (state == null) {
+            state = methods.computeIfAbsent(fullMethodName, name -> {
+                String bareName = name.substring(name.lastIndexOf('/') + 1);
+                MethodState created = new MethodState(sharePercent.getOrDefault(bareName, 100));
+                registry.registerCounter("grpc_server_calls_shed_total",
+                        "method=\"" + name + "\"", created.shed::sum);
+                return created;
+            });
+        }
+        return state;
+    }
+
+    private boolean tryAcquire(int share) {
+        int allowed = Math.max(1, limit * share / 100);
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void onSample(MethodState method, long rttNanos, int inFlightAtStart) {
+        method.record(rttNanos);
+        // Only grow while the limit is actually being used
+        if (!limitUsed && inFlightAtStart * 2 >= limit) {
+            limitUsed = true;
+        }
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= WINDOW_NANOS && updating.compareAndSet(false, true)) {
+            try {
+                update(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void update(long now) {
+        if (now - windowStartNanos < WINDOW_NANOS) {
+            // Another thread just closed the window
+            return;
+        }
+        long samples = 0;
+        for (MethodState method : methods.values()) {
+            samples += method.windowSamples.sum();
+        }
+        if (samples < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+
+        // Samples recorded while the counters are read land in this window or the next
+        double weightedQueue = 0;
+        samples = 0;
+        for (MethodState method : methods.values()) {
+            long count = method.windowSamples.sumThenReset();
+            long rttSum = method.windowRttNanos.sumThenReset();
+            long minRtt = method.windowMinRttNanos.getAndSet(Long.MAX_VALUE);
+            if (count == 0 || minRtt == Long.MAX_VALUE) {
+                continue;
+            }
+            if (--method.windowsUntilReset <= 0 || minRtt < method.noLoadRttNanos) {
+                method.noLoadRttNanos = minRtt;
+                method.windowsUntilReset = BASELINE_RESET_WINDOWS;
+            }
+            double averageRtt = Math.max(1, (double) rttSum / count);
+            weightedQueue += count * estimatedLimit * Math.max(0, 1 - method.noLoadRttNanos / averageRtt);
+            samples += count;
+        }
+        if (samples == 0) {
+            return;
+        }
+
+        double queue = weightedQueue / samples;
+        double step = Math.max(1, Math.log10(estimatedLimit));
+        if (queue <= 3 * step) {
+            if (limitUsed) {
+                estimatedLimit += step;
+            }
+        } else if (queue >= 6 * step) {
+            estimatedLimit -= step;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+        limitUsed = false;
+        windowStartNanos = now;
+    }
+
+    private static final class MethodState {
+        final int share;
+        final LongAdder shed = new LongAdder();
+        final LongAdder windowSamples = new LongAdder();
+        final LongAdder windowRttNanos = new LongAdder();
+        final AtomicLong windowMinRttNanos = new AtomicLong(Long.MAX_VALUE);
+        // Guarded by the interceptor's updating flag
+        long noLoadRttNanos = Long.MAX_VALUE;
+        int windowsUntilReset = BASELINE_RESET_WINDOWS;
+
+        MethodState(int share) {
+            this.share = share;
+        }
+
+        void record(long rttNanos) {
+            windowSamples.increment();
+            windowRttNanos.add(rttNanos);
+            long min = windowMinRttNanos.get();
+            while (rttNanos < min && !windowMinRttNanos.compareAndSet(min, rttNanos)) {
+                min = windowMinRttNanos.get();
+            }
+        }
+    }
+
+    private static final class LimitedServerCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<LimitedServerCall> RELEASED =
+                AtomicIntegerFieldUpdater.newUpdater(LimitedServerCall.class, "released");
+
+        private final AdmissionControlInterceptor limiter;
+        private final MethodState method;
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private final boolean sampled;
+        private volatile int released;
+
+        LimitedServerCall(ServerCall<ReqT, RespT> delegate, AdmissionControlInterceptor limiter,
+                          MethodState method, boolean sampled) {
+            super(delegate);
+            this.limiter = limiter;
+            this.method = method;
+            this.sampled = sampled;
+            this.inFlightAtStart = limiter.inFlight.get();
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            release(sampled && status.isOk());
+            super.close(status, trailers);
+        }
+
+        // Only successful calls say something about queueing; failures just free their slot
+        void release(boolean sample) {
+            if (RELEASED.compareAndSet(this, 0, 1)) {
+                limiter.inFlight.decrementAndGet();
+                if (sample) {
+                    limiter.onSample(method, Math.max(1, System.nanoTime() - startNanos), inFlightAtStart);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.didiyudha.grpc.server;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes a share of unary calls slow or fail with UNAVAILABLE, to test client
+ * hedging and retries against a local server. Slow calls run as usual but
+ * their response is held back until the delay has passed, so no server
+ * thread sleeps.
+ */
+public final class FaultInjectionInterceptor implements ServerInterceptor {
+
+    private final double delayProbability;
+    private final long delayMillis;
+    private final double unavailableProbability;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param delayPercent       share of calls whose response is delayed
+     * @param delayMillis        how long those responses are held back
+     * @param unavailablePercent share of calls rejected with UNAVAILABLE
+     */
+    public FaultInjectionInterceptor(int delayPercent, long delayMillis, int unavailablePercent) {
+        this.delayProbability = delayPercent / 100.0;
+        this.delayMillis = delayMillis;
+        this.unavailableProbability = unavailablePercent / 100.0;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fault-injection-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.startCall(call, headers);
+        }
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < unavailableProbability) {
+            call.close(Status.UNAVAILABLE.withDescription("Injected failure"), new Metadata());
+            return new ServerCall.Listener<ReqT>() {
+            };
+        }
+        if (roll < unavailableProbability + delayProbability) {
+            DelayedCall<ReqT, RespT> delayed = new DelayedCall<>(call);
+            scheduler.schedule(delayed::release, delayMillis, TimeUnit.MILLISECONDS);
+            return next.startCall(delayed, headers);
+        }
+        return next.startCall(call, headers);
+    }
+
+    /**
+     * Queues everything the handler sends until {@link #release()}, then passes it on.
+     */
+    private static final class DelayedCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private List<Runnable> pending = new ArrayList<>();
+
+        DelayedCall(ServerCall<ReqT, RespT> delegate) {
+            super(delegate);
+        }
+
+        synchronized void release() {
+            for (Runnable action : pending) {
+                action.run();
+            }
+            pending = null;
+        }
+
+        private synchronized void sendOrQueue(Runnable action) {
+            if (pending != null) {
+                pending.add(action);
+            } else {
+                action.run();
+            }
+        }
+
+        @Override
+        public void sendHeaders(Metadata headers) {
+            sendOrQueue(() -> super.sendHeaders(headers));
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            sendOrQueue(() -> super.sendMessage(message));
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            sendOrQueue(() -> super.close(status, trailers));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.didiyudha.grpc.server;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Processes the messages of one bidirectional stream on a worker pool while
+ * keeping the responses in request order.
+ *
+ * Each inbound message is handed to the executor for the expensive, stateless
+ * {@code work} step. Results are re-sequenced and passed in order to the
+ * {@code emit} step, which may keep per-stream state and returns the response
+ * to send, or null to send nothing. Inbound flow control is manual: at most
+ * {@code window} messages are requested ahead of the oldest unsent response,
+ * and no more are requested while the client is not reading, so a stream
+ * never buffers more than {@code window} results.
+ */
+public final class OrderedPipeline {
+
+    private final Executor executor;
+    private final int window;
+
+    public OrderedPipeline(Executor executor, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.executor = executor;
+        this.window = window;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Starts processing a stream. Must be called from the service method, before it returns,
+     * with the response observer gRPC passed in.
+     */
+    public <ReqT, T, RespT> StreamObserver<ReqT> start(StreamObserver<RespT> responseObserver,
+                                                       Function<ReqT, T> work,
+                                                       Function<T, RespT> emit) {
+        return new Stream<>((ServerCallStreamObserver<RespT>) responseObserver, work, emit);
+    }
+
+    private final class Stream<ReqT, T, RespT> implements StreamObserver<ReqT> {
+        private final ServerCallStreamObserver<RespT> observer;
+        private final Function<ReqT, T> work;
+        private final Function<T, RespT> emit;
+
+        // Completed results by sequence number modulo window
+        private final Object[] results = new Object[window];
+        private final boolean[] done = new boolean[window];
+
+        private long received = 0;
+        private long emitted = 0;
+        private int deferredRequests = 0;
+        private boolean inputComplete = false;
+        private boolean finished = false;
+
+        Stream(ServerCallStreamObserver<RespT> observer, Function<ReqT, T> work, Function<T, RespT> emit) {
+            this.observer = observer;
+            this.work = work;
+            this.emit = emit;
+            observer.disableAutoInboundFlowControl();
+            observer.setOnReadyHandler(this::onReady);
+            observer.setOnCancelHandler(this::onCancel);
+            observer.request(window);
+        }
+
+        @Override
+        public void onNext(ReqT value) {
+            long sequence;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                sequence = received++;
+            }
+            try {
+                executor.execute(() -> process(sequence, value));
+            } catch (RejectedExecutionException e) {
+                fail(Status.UNAVAILABLE.withDescription("Worker pool rejected the message").withCause(e));
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            synchronized (this) {
+                finished = true;
+            }
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            inputComplete = true;
+            completeIfDrained();
+        }
+
+        private void process(long sequence, ReqT value) {
+            T result;
+            try {
+                result = work.apply(value);
+            } catch (RuntimeException e) {
+                fail(Status.fromThrowable(e));
+                return;
+            }
+            complete(sequence, result);
+        }
+
+        private synchronized void complete(long sequence, T result) {
+            if (finished) {
+                return;
+            }
+            int slot = (int) (sequence % window);
+            results[slot] = result;
+            done[slot] = true;
+
+            // Send every result that is now next in line
+            int freed = 0;
+            while (done[(int) (emitted % window)]) {
+                int next = (int) (emitted % window);
+                @SuppressWarnings("unchecked")
+                T ready = (T) results[next];
+                results[next] = null;
+                done[next] = false;
+                emitted++;
+                freed++;
+                RespT response;
+                try {
+                    response = emit.apply(ready);
+                } catch (RuntimeException e) {
+                    failLocked(Status.fromThrowable(e));
+                    return;
+                }
+                if (response != null) {
+                    observer.onNext(response);
+                }
+            }
+
+            deferredRequests += freed;
+            requestIfReady();
+            completeIfDrained();
+        }
+
+        private synchronized void onReady() {
+            requestIfReady();
+        }
+
+        private synchronized void onCancel() {
+            finished = true;
+        }
+
+        private void requestIfReady() {
+            if (deferredRequests > 0 && !finished && !inputComplete && observer.isReady()) {
+                observer.request(deferredRequests);
+                deferredRequests = 0;
+            }
+        }
+
+        private void completeIfDrained() {
+            if (inputComplete && !finished && emitted == received) {
+                finished = true;
+                observer.onCompleted();
+            }
+        }
+
+        private synchronized void fail(Status status) {
+            failLocked(status);
+        }
+
+        private void failLocked(Status status) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            observer.onError(status.asRuntimeException());
+        }
+    }
+}
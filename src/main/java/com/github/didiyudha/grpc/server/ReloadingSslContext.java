@@ -0,0 +1,382 @@
+package com.github.didiyudha.grpc.server;
+
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSsl;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSslSessionContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SupportedCipherSuiteFilter;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server TLS context tuned for cheap handshakes that picks up renewed
+ * certificates without a restart.
+ *
+ * <ul>
+ * <li>Uses the BoringSSL build of netty-tcnative bundled with the shaded
+ * Netty when it loads, the JDK provider otherwise.</li>
+ * <li>Lets clients resume sessions, from the server's session cache or with
+ * session tickets. Ticket keys survive certificate reloads, and servers that
+ * share a ticket key file resume each other's sessions.</li>
+ * <li>Prefers AES-GCM when the CPU has AES instructions and ChaCha20-Poly1305
+ * when it does not.</li>
+ * <li>Checks the certificate and key files for changes and swaps in a new
+ * context when they change. Connections already open keep their
+ * handshake; new ones get the new certificate.</li>
+ * </ul>
+ */
+public final class ReloadingSslContext extends SslContext implements Closeable {
+
+    private static final List<String> AES_GCM_CIPHERS = Arrays.asList(
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384");
+    private static final List<String> CHACHA20_CIPHERS = Arrays.asList(
+            "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256");
+
+    private final Builder settings;
+    private final OpenSslSessionTicketKey[] ticketKeys;
+    private final ScheduledExecutorService reloader;
+
+    private volatile SslContext current;
+    private long certChainModified;
+    private long privateKeyModified;
+
+    private ReloadingSslContext(Builder builder) throws SSLException {
+        this.settings = builder.copy();
+        this.ticketKeys = settings.provider == SslProvider.OPENSSL ? ticketKeys(settings.ticketKeyFile) : null;
+        reload();
+
+        if (settings.reloadIntervalNanos > 0) {
+            reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tls-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged,
+                    settings.reloadIntervalNanos, settings.reloadIntervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            reloader = null;
+        }
+    }
+
+    public static Builder newBuilder(File certChain, File privateKey) {
+        return new Builder(certChain, privateKey);
+    }
+
+    /**
+     * Reads the {@code tls.*} settings of a server:
+     *
+     * <pre>
+     * greeting.tls.certChain=ssl/server.crt
+     * greeting.tls.privateKey=ssl/server.pem
+     * greeting.tls.provider=auto             # auto | openssl | jdk
+     * greeting.tls.ciphers=auto              # auto, or a comma separated list in preference order
+     * greeting.tls.sessionCacheSize=20480
+     * greeting.tls.sessionTimeout=3600       # seconds
+     * greeting.tls.ticketKeyFile=            # 48 random bytes shared by all servers; random per process if unset
+     * greeting.tls.reloadInterval=60         # seconds between checks for new certificates; 0 disables reloading
+     * </pre>
+     */
+    public static Builder fromConfig(ServerConfig config, String defaultCertChain, String defaultPrivateKey) {
+        Builder builder = newBuilder(new File(config.getString("tls.certChain", defaultCertChain)),
+                new File(config.getString("tls.privateKey", defaultPrivateKey)))
+                .sessionCacheSize(config.getLong("tls.sessionCacheSize", 20480))
+                .sessionTimeout(config.getLong("tls.sessionTimeout", 3600), TimeUnit.SECONDS)
+                .reloadInterval(config.getLong("tls.reloadInterval", 60), TimeUnit.SECONDS);
+
+        String provider = config.getString("tls.provider", "auto").trim().toLowerCase(Locale.ROOT);
+        switch (provider) {
+            case "auto":
+                break;
+            case "openssl":
+                builder.provider(SslProvider.OPENSSL);
+                break;
+            case "jdk":
+                builder.provider(SslProvider.JDK);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid value for " + config.getName() + ".tls.provider: " + provider);
+        }
+
+        String ciphers = config.getString("tls.ciphers", "auto").trim();
+        if (!"auto".equalsIgnoreCase(ciphers)) {
+            builder.ciphers(Arrays.asList(ciphers.split("\\s*,\\s*")));
+        }
+
+        String ticketKeyFile = config.getString("tls.ticketKeyFile", "").trim();
+        if (!ticketKeyFile.isEmpty()) {
+            builder.ticketKeyFile(new File(ticketKeyFile));
+        }
+        return builder;
+    }
+
+    /**
+     * A client context with the provider and cipher preference servers get
+     * by default, trusting the certificates in {@code trustCertCollection}.
+     * Build it once and share it, e.g. through a {@code ChannelPool}.
+     */
+    public static SslContext forClient(File trustCertCollection) throws SSLException {
+        return GrpcSslContexts.configure(SslContextBuilder.forClient(), defaultProvider())
+                .trustManager(trustCertCollection)
+                .ciphers(preferredCiphers(), SupportedCipherSuiteFilter.INSTANCE)
+                .build();
+    }
+
+    private static SslProvider defaultProvider() {
+        return OpenSsl.isAlpnSupported() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+
+    /**
+     * Cipher suites in preference order for this machine: AES-GCM first when
+     * the CPU has AES instructions, ChaCha20-Poly1305 first otherwise.
+     */
+    public static List<String> preferredCiphers() {
+        if (hasAesInstructions()) {
+            return concat(AES_GCM_CIPHERS, CHACHA20_CIPHERS);
+        }
+        return concat(CHACHA20_CIPHERS, AES_GCM_CIPHERS);
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return Collections.unmodifiableList(all);
+    }
+
+    // Linux lists "aes" in the x86 flags and in the ARMv8 features. Elsewhere AES is assumed, as on any recent server CPU.
+    private static boolean hasAesInstructions() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/cpuinfo"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("flags") || line.startsWith("Features")) {
+                    return Arrays.asList(line.substring(line.indexOf(':') + 1).trim().split("\\s+")).contains("aes");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return true;
+    }
+
+    private static OpenSslSessionTicketKey[] ticketKeys(File file) throws SSLException {
+        byte[] key = new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+        if (file != null) {
+            try {
+                key = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                throw new SSLException("Cannot read session ticket key " + file, e);
+            }
+            if (key.length != OpenSslSessionTicketKey.TICKET_KEY_SIZE) {
+                throw new SSLException("Session ticket key " + file + " must be "
+                        + OpenSslSessionTicketKey.TICKET_KEY_SIZE + " bytes, not " + key.length);
+            }
+        } else {
+            new SecureRandom().nextBytes(key);
+        }
+        int hmac = OpenSslSessionTicketKey.NAME_SIZE;
+        int aes = hmac + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+        return new OpenSslSessionTicketKey[]{new OpenSslSessionTicketKey(
+                Arrays.copyOfRange(key, 0, hmac),
+                Arrays.copyOfRange(key, hmac, aes),
+                Arrays.copyOfRange(key, aes, key.length))};
+    }
+
+    /**
+     * Builds a new context from the certificate and key files. On failure the current context stays in use.
+     */
+    public synchronized void reload() throws SSLException {
+        long certChainModified = settings.certChain.lastModified();
+        long privateKeyModified = settings.privateKey.lastModified();
+
+        SslContextBuilder builder = GrpcSslContexts.configure(
+                SslContextBuilder.forServer(settings.certChain, settings.privateKey), settings.provider)
+                .ciphers(settings.ciphers, SupportedCipherSuiteFilter.INSTANCE)
+                .sessionCacheSize(settings.sessionCacheSize)
+                .sessionTimeout(settings.sessionTimeoutSeconds);
+        SslContext context = builder.build();
+        if (ticketKeys != null && context.sessionContext() instanceof OpenSslSessionContext) {
+            ((OpenSslSessionContext) context.sessionContext()).setTicketKeys(ticketKeys);
+        }
+
+        boolean reloaded = current != null;
+        current = context;
+        this.certChainModified = certChainModified;
+        this.privateKeyModified = privateKeyModified;
+        System.out.println((reloaded ? "Reloaded" : "Loaded") + " TLS certificate " + settings.certChain
+                + " using " + settings.provider + ", ciphers " + context.cipherSuites());
+    }
+
+    private synchronized void reloadIfChanged() {
+        if (settings.certChain.lastModified() == certChainModified
+                && settings.privateKey.lastModified() == privateKeyModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (SSLException | RuntimeException e) {
+            // Often a certificate renewed before its key; the next check picks up the pair
+            System.out.println("Keeping current TLS certificate, reload of " + settings.certChain + " failed: " + e);
+        }
+    }
+
+    public SslProvider getProvider() {
+        return settings.provider;
+    }
+
+    @Override
+    public boolean isClient() {
+        return false;
+    }
+
+    @Override
+    public List<String> cipherSuites() {
+        return current.cipherSuites();
+    }
+
+    @Override
+    public long sessionCacheSize() {
+        return current.sessionCacheSize();
+    }
+
+    @Override
+    public long sessionTimeout() {
+        return current.sessionTimeout();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public io.grpc.netty.shaded.io.netty.handler.ssl.ApplicationProtocolNegotiator applicationProtocolNegotiator() {
+        return current.applicationProtocolNegotiator();
+    }
+
+    @Override
+    public SSLEngine newEngine(ByteBufAllocator alloc) {
+        return current.newEngine(alloc);
+    }
+
+    @Override
+    public SSLEngine newEngine(ByteBufAllocator alloc, String peerHost, int peerPort) {
+        return current.newEngine(alloc, peerHost, peerPort);
+    }
+
+    @Override
+    public SSLSessionContext sessionContext() {
+        return current.sessionContext();
+    }
+
+    /**
+     * Stops checking for new certificates.
+     */
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    public static final class Builder {
+        private final File certChain;
+        private final File privateKey;
+        private SslProvider provider = defaultProvider();
+        private List<String> ciphers = preferredCiphers();
+        private long sessionCacheSize;
+        private long sessionTimeoutSeconds;
+        private File ticketKeyFile;
+        private long reloadIntervalNanos;
+
+        private Builder(File certChain, File privateKey) {
+            this.certChain = certChain;
+            this.privateKey = privateKey;
+        }
+
+        /**
+         * OpenSSL (BoringSSL) by default when netty-tcnative loads with ALPN support, the JDK otherwise.
+         */
+        public Builder provider(SslProvider provider) {
+            if (provider == SslProvider.OPENSSL && !OpenSsl.isAlpnSupported()) {
+                throw new IllegalStateException("OpenSSL with ALPN is not available", OpenSsl.unavailabilityCause());
+            }
+            this.provider = provider;
+            return this;
+        }
+
+        /**
+         * Cipher suites in preference order; suites the provider lacks are skipped. Defaults to {@link #preferredCiphers()}.
+         */
+        public Builder ciphers(List<String> ciphers) {
+            this.ciphers = Collections.unmodifiableList(ciphers);
+            return this;
+        }
+
+        /**
+         * Sessions kept for resumption by session ID; 0 uses the provider's default.
+         */
+        public Builder sessionCacheSize(long sessionCacheSize) {
+            this.sessionCacheSize = sessionCacheSize;
+            return this;
+        }
+
+        /**
+         * How long a session, cached or in a ticket, can be resumed; 0 uses the provider's default.
+         */
+        public Builder sessionTimeout(long timeout, TimeUnit unit) {
+            this.sessionTimeoutSeconds = unit.toSeconds(timeout);
+            return this;
+        }
+
+        /**
+         * A file with the 48 byte session ticket key, for servers behind one address that should resume each
+         * other's sessions. Only used with OpenSSL.
+         */
+        public Builder ticketKeyFile(File ticketKeyFile) {
+            this.ticketKeyFile = ticketKeyFile;
+            return this;
+        }
+
+        /**
+         * Check the certificate and key files for changes this often.
+         */
+        public Builder reloadInterval(long interval, TimeUnit unit) {
+            this.reloadIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        private Builder copy() {
+            Builder copy = new Builder(certChain, privateKey);
+            copy.provider = provider;
+            copy.ciphers = ciphers;
+            copy.sessionCacheSize = sessionCacheSize;
+            copy.sessionTimeoutSeconds = sessionTimeoutSeconds;
+            copy.ticketKeyFile = ticketKeyFile;
+            copy.reloadIntervalNanos = reloadIntervalNanos;
+            return copy;
+        }
+
+        public ReloadingSslContext build() throws SSLException {
+            return new ReloadingSslContext(this);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.github.didiyudha.grpc.server;
+
+import com.github.didiyudha.grpc.capture.CaptureInterceptor;
+import com.github.didiyudha.grpc.capture.TrafficJournal;
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+import com.github.didiyudha.grpc.compression.CompressionServerInterceptor;
+import com.github.didiyudha.grpc.metrics.MetricsHttpServer;
+import com.github.didiyudha.grpc.metrics.MetricsInterceptor;
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import com.github.didiyudha.grpc.metrics.ServerPhaseTracer;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServerStreamTracer;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import io.grpc.services.HealthStatusManager;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates Netty server builders from a {@link ServerConfig} and owns the
+ * executor and event loop groups they run on. Call {@link #shutdown()} once
+ * the server has terminated to release them.
+ *
+ * Every server also serves the standard {@code grpc.health.v1.Health}
+ * service, which reports NOT_SERVING until {@link #start(Server)} has warmed
+ * the services up and again once the server starts draining.
+ */
+public final class ServerBootstrap {
+
+    private static final String EPOLL = "io.grpc.netty.shaded.io.netty.channel.epoll.Epoll";
+    private static final String EPOLL_EVENT_LOOP_GROUP = "io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup";
+    private static final String EPOLL_SERVER_CHANNEL = "io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel";
+
+    private final ServerConfig config;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final HealthStatusManager health = new HealthStatusManager();
+    private final StartupTimer startupTimer = new StartupTimer(metrics);
+    private final ServerWarmUp warmUp;
+    private final List<Runnable> shutdownTasks = new ArrayList<>();
+
+    private ExecutorService executor;
+    private ExecutorService handOffExecutor;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private MetricsHttpServer metricsServer;
+    private ExecutorService pipelineExecutor;
+    private OrderedPipeline pipeline;
+    private TrafficJournal journal;
+    private boolean configured;
+    private String inProcessName;
+    private boolean tls;
+
+    public ServerBootstrap(ServerConfig config) {
+        this.config = config;
+        this.warmUp = new ServerWarmUp(config.getWarmUpIterations());
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Metrics recorded for every call when {@code metrics.port} is configured.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The worker pool for bidi streams, created on first use, or null when
+     * {@code pipeline.threads} is 0 and messages should be handled inline.
+     */
+    public synchronized OrderedPipeline getPipeline() {
+        if (pipeline == null && config.getPipelineThreads() > 0) {
+            pipelineExecutor = Executors.newFixedThreadPool(config.getPipelineThreads(),
+                    new DefaultThreadFactory(config.getName() + "-pipeline", true));
+            pipeline = new OrderedPipeline(pipelineExecutor, config.getPipelineWindow());
+        }
+        return pipeline;
+    }
+
+    /**
+     * The executor calls run on, for work a service hands off from its own
+     * threads. With the {@code default} or {@code direct} executor, which the
+     * bootstrap does not own, a cached pool is created on first use instead.
+     * Call it once the server builder has been created.
+     */
+    public synchronized Executor getExecutor() {
+        if (executor != null) {
+            return executor;
+        }
+        if (handOffExecutor == null) {
+            handOffExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory(config.getName() + "-handoff", true));
+        }
+        return handOffExecutor;
+    }
+
+    /**
+     * Registers warm-up calls for {@code service}, run by {@link #start(Server)}
+     * when {@code warmup.iterations} is set.
+     */
+    public void addWarmUp(ServerServiceDefinition service, ServerWarmUp.Calls calls) {
+        warmUp.add(service, calls);
+    }
+
+    /**
+     * Like {@link #addWarmUp(ServerServiceDefinition, ServerWarmUp.Calls)},
+     * with {@code once} run a single time after the repeated calls.
+     */
+    public void addWarmUp(ServerServiceDefinition service, ServerWarmUp.Calls calls, ServerWarmUp.Calls once) {
+        warmUp.add(service, calls, once);
+    }
+
+    /**
+     * Runs {@code task} in {@link #shutdown()} once the executor has stopped,
+     * to release what a service owns, such as its timer threads.
+     */
+    public synchronized void onShutdown(Runnable task) {
+        shutdownTasks.add(task);
+    }
+
+    /**
+     * Returns a builder bound to the configured port with the executor,
+     * transport, event loops and message limits applied, the health service
+     * added, and the metrics interceptor installed when a metrics port is
+     * configured.
+     */
+    public NettyServerBuilder newServerBuilder() throws IOException {
+        return newServerBuilder(null);
+    }
+
+    /**
+     * Returns a builder as {@link #newServerBuilder()} does, serving TLS with
+     * {@code sslContext} unless it is null.
+     */
+    public synchronized NettyServerBuilder newServerBuilder(SslContext sslContext) throws IOException {
+        checkNoBuilderYet();
+
+        NettyServerBuilder builder = NettyServerBuilder.forPort(config.getPort())
+                .maxMessageSize(config.getMaxInboundMessageSize())
+                .flowControlWindow(config.getFlowControlWindow());
+
+        boolean epoll = useEpoll();
+        bossGroup = newEventLoopGroup(epoll, config.getBossThreads(), config.getName() + "-boss");
+        workerGroup = newEventLoopGroup(epoll, config.getWorkerThreads(), config.getName() + "-worker");
+        builder.bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup)
+                .channelType(epoll ? epollServerChannel() : NioServerSocketChannel.class);
+        if (sslContext != null) {
+            builder.sslContext(sslContext);
+            tls = true;
+        }
+
+        configure(builder);
+        System.out.println("Server config: " + config + (epoll ? " using epoll" : " using nio"));
+        return builder;
+    }
+
+    /**
+     * Returns a builder for an in-process server called {@code name}, with the
+     * executor, health service and interceptors of {@link #newServerBuilder()},
+     * for callers in the same JVM. Those reach it with a
+     * {@code ChannelPool} target of {@code inprocess:<name>}; their protobuf
+     * messages are passed by reference, never serialized.
+     */
+    public synchronized InProcessServerBuilder newInProcessServerBuilder(String name) throws IOException {
+        checkNoBuilderYet();
+        inProcessName = name;
+
+        InProcessServerBuilder builder = InProcessServerBuilder.forName(name);
+        configure(builder);
+        System.out.println("In-process server " + name + " config: " + config);
+        return builder;
+    }
+
+    /**
+     * Whether the server is in-process, in which case services should leave
+     * out optimizations of the wire format: in-process messages never get there.
+     */
+    public synchronized boolean isInProcess() {
+        return inProcessName != null;
+    }
+
+    private void checkNoBuilderYet() {
+        if (configured) {
+            throw new IllegalStateException("Server builder already created for " + config.getName());
+        }
+        configured = true;
+    }
+
+    private void configure(ServerBuilder<?> builder) throws IOException {
+        builder.compressorRegistry(CompressionPolicy.compressorRegistry())
+                .decompressorRegistry(CompressionPolicy.decompressorRegistry())
+                .addService(health.getHealthService());
+
+        switch (config.getExecutorType()) {
+            case FORKJOIN:
+                executor = newForkJoinPool(config.getName() + "-executor", config.getExecutorThreads());
+                builder.executor(executor);
+                break;
+            case FIXED:
+                executor = Executors.newFixedThreadPool(config.getExecutorThreads(),
+                        new DefaultThreadFactory(config.getName() + "-executor", true));
+                builder.executor(executor);
+                break;
+            case DIRECT:
+                builder.directExecutor();
+                break;
+            case DEFAULT:
+            default:
+                break;
+        }
+
+        if (!config.getCompression().isEmpty()) {
+            builder.intercept(new CompressionServerInterceptor(config.getCompression()));
+        }
+
+        if (config.isFaultInjectionEnabled()) {
+            builder.intercept(warmUp.skip(new FaultInjectionInterceptor(config.getFaultDelayPercent(),
+                    config.getFaultDelayMillis(), config.getFaultUnavailablePercent())));
+        }
+
+        // Shed calls never reach the service, so fault injection sits inside admission control
+        if (config.isAdmissionControlEnabled()) {
+            builder.intercept(new AdmissionControlInterceptor(config.getAdmissionInitialLimit(),
+                    config.getAdmissionMinLimit(), config.getAdmissionMaxLimit(),
+                    config.getAdmissionShares(), metrics));
+        }
+
+        builder.intercept(warmUp.skip(startupTimer));
+
+        // Outside admission control and fault injection, so it records what clients sent
+        if (config.getCaptureFile() != null) {
+            journal = TrafficJournal.create(Paths.get(config.getCaptureFile()), config.getCaptureMaxBytes());
+            journal.registerMetrics(metrics);
+            builder.intercept(warmUp.skip(new CaptureInterceptor(journal)));
+        }
+
+        // Installed late so it runs early and also measures injected faults and shed calls
+        if (config.getMetricsPort() > 0) {
+            builder.intercept(warmUp.skip(new MetricsInterceptor(metrics)));
+            metricsServer = new MetricsHttpServer(config.getMetricsPort(), metrics);
+            metricsServer.start();
+        }
+
+        // Outermost, so its listener sees each request right after parsing
+        if (config.isTraceEnabled()) {
+            ServerPhaseTracer tracer = new ServerPhaseTracer(metrics, config.getTraceSlowCallMillis());
+            builder.addStreamTracerFactory(warmUp.skip((ServerStreamTracer.Factory) tracer))
+                    .intercept(warmUp.skip((ServerInterceptor) tracer));
+        }
+    }
+
+    /**
+     * Starts {@code server}, drains it on exit, runs the warm-up against it
+     * and then reports SERVING. With {@code warmup.exit} set the server is shut down
+     * right after the warm-up instead, which is how the class data sharing
+     * archive is trained.
+     */
+    public void start(Server server) throws IOException, InterruptedException {
+        setServingStatus(server, ServingStatus.NOT_SERVING);
+        server.start();
+        drainOnExit(server);
+
+        long warmUpMillis = warmUp.isEnabled() ? warmUp.run(newWarmUpChannel(server)) : 0;
+        if (config.isWarmUpExit()) {
+            System.out.println("Warm-up finished in " + warmUpMillis + " ms, stopping");
+            server.shutdown();
+            return;
+        }
+        setServingStatus(server, ServingStatus.SERVING);
+        startupTimer.serving(warmUpMillis);
+    }
+
+    // Warm-up calls take the path of real ones, trusting the server's own certificate
+    private synchronized ManagedChannel newWarmUpChannel(Server server) throws IOException {
+        if (inProcessName != null) {
+            return InProcessChannelBuilder.forName(inProcessName).build();
+        }
+        NettyChannelBuilder builder = NettyChannelBuilder
+                .forAddress(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort())
+                .maxInboundMessageSize(config.getMaxInboundMessageSize());
+        if (tls) {
+            builder.sslContext(GrpcSslContexts.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build());
+        } else {
+            builder.usePlaintext();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Drains {@code server} when the JVM is asked to stop: the health service
+     * reports NOT_SERVING for {@code shutdown.healthDelay}, so load balancers
+     * stop sending calls, then new calls are refused, calls in flight get
+     * {@code shutdown.gracePeriod} to finish and are cancelled after that. The bootstrap is shut down once the
+     * server has terminated.
+     */
+    public void drainOnExit(Server server) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Received shutdown request");
+            try {
+                drain(server);
+                System.out.println("Successfully stopped the server");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, config.getName() + "-drain"));
+    }
+
+    /**
+     * Stops {@code server} as described in {@link #drainOnExit(Server)} and waits until it has.
+     */
+    public void drain(Server server) throws InterruptedException {
+        long gracePeriod = config.getShutdownGracePeriodSeconds();
+        setServingStatus(server, ServingStatus.NOT_SERVING);
+        // No load balancer watches an in-process server
+        long healthDelay = isInProcess() ? 0 : config.getShutdownHealthDelaySeconds();
+        if (healthDelay > 0) {
+            System.out.println("Reporting NOT_SERVING for " + healthDelay + "s before refusing new calls");
+            TimeUnit.SECONDS.sleep(healthDelay);
+        }
+        server.shutdown();
+        if (!server.awaitTermination(gracePeriod, TimeUnit.SECONDS)) {
+            System.out.println("Cancelling calls still running after " + gracePeriod + "s");
+            server.shutdownNow();
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        shutdown();
+    }
+
+    /**
+     * Releases the executor and event loops, runs the {@link #onShutdown}
+     * tasks and closes the capture journal.
+     * Only call after the server has terminated.
+     */
+    public synchronized void shutdown() throws InterruptedException {
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdown();
+        }
+        if (handOffExecutor != null) {
+            handOffExecutor.shutdown();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+        if (executor != null) {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        for (Runnable task : shutdownTasks) {
+            task.run();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Could not close capture journal " + journal.getPath() + ": " + e);
+            }
+        }
+    }
+
+    // The empty name stands for the server as a whole
+    private void setServingStatus(Server server, ServingStatus status) {
+        health.setStatus("", status);
+        for (ServerServiceDefinition service : server.getServices()) {
+            health.setStatus(service.getServiceDescriptor().getName(), status);
+        }
+    }
+
+    private boolean useEpoll() {
+        switch (config.getTransportType()) {
+            case NIO:
+                return false;
+            case EPOLL:
+                if (!epollAvailable()) {
+                    throw new IllegalStateException("Native epoll transport is not available");
+                }
+                return true;
+            case AUTO:
+            default:
+                return epollAvailable();
+        }
+    }
+
+    // The shaded Netty only ships the native epoll transport in some gRPC releases,
+    // so it is looked up reflectively instead of linked against.
+    private static boolean epollAvailable() {
+        try {
+            return (Boolean) Class.forName(EPOLL).getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends ServerChannel> epollServerChannel() {
+        try {
+            return (Class<? extends ServerChannel>) Class.forName(EPOLL_SERVER_CHANNEL);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static EventLoopGroup newEventLoopGroup(boolean epoll, int threads, String name) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        if (!epoll) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+        try {
+            return (EventLoopGroup) Class.forName(EPOLL_EVENT_LOOP_GROUP)
+                    .getConstructor(int.class, ThreadFactory.class)
+                    .newInstance(threads, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ForkJoinPool newForkJoinPool(String name, int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+}
@@ -0,0 +1,398 @@
+package com.github.didiyudha.grpc.server;
+
+import com.github.didiyudha.grpc.compression.CompressionPolicy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Tuning knobs for a gRPC server process.
+ *
+ * Every key is scoped by the server name, e.g. {@code calculator.port} or
+ * {@code greeting.executor}. Values are read from the properties file named by
+ * the {@code grpc.server.config} system property, if set, and individual
+ * system properties override the file:
+ *
+ * <pre>
+ * calculator.port=50055
+ * calculator.executor=forkjoin        # default | forkjoin | fixed | direct
+ * calculator.executor.threads=8
+ * calculator.boss.threads=1
+ * calculator.worker.threads=0         # 0 lets Netty pick 2 * cores
+ * calculator.transport=auto           # auto | epoll | nio
+ * calculator.maxInboundMessageSize=4194304
+ * calculator.flowControlWindow=1048576
+ * calculator.metrics.port=9055        # serve /metrics here; unset or 0 disables metrics
+ * calculator.trace.enabled=true       # time every call's phases; on by default with metrics or a slow call log
+ * calculator.trace.slowCallMillis=250 # print calls at least this slow with their phases; 0 prints none
+ * calculator.capture.file=calculator.journal  # append every request to this memory-mapped journal for replay
+ * calculator.capture.maxBytes=268435456        # journal size; requests beyond it are dropped
+ * calculator.shutdown.healthDelay=5   # seconds NOT_SERVING is reported on shutdown before new calls are refused;
+ *                                     # 0 by default, behind a load balancer its check interval times its threshold
+ * calculator.shutdown.gracePeriod=30  # seconds calls in flight get to finish on shutdown
+ * calculator.warmup.iterations=20     # call every method this often over loopback before reporting SERVING
+ * calculator.warmup.exit=false        # stop after the warm-up, for class data sharing training runs
+ * calculator.pipeline.threads=4       # process bidi stream messages in parallel; 0 handles them inline
+ * calculator.pipeline.window=16       # messages in flight per stream, default 4 * pipeline.threads
+ * calculator.fault.delay.percent=5    # testing only: hold back this share of unary responses
+ * calculator.fault.delay.ms=200
+ * calculator.fault.unavailable.percent=1   # testing only: fail this share of unary calls
+ * calculator.admission.limit.initial=20    # adaptive limit on unary calls in flight; unset or 0 disables it
+ * calculator.admission.limit.min=4
+ * calculator.admission.limit.max=1000
+ * calculator.admission.share.PrimeNumberDecompositionBatch=50   # shed once in-flight calls reach 50% of the limit
+ * greeting.compression.method.GreetManyTimes=lz4|gzip   # response encodings in order of preference
+ * greeting.compression.minMessageSize=1024  # smaller messages are sent uncompressed
+ * </pre>
+ */
+public final class ServerConfig {
+
+    public static final String CONFIG_FILE_PROPERTY = "grpc.server.config";
+
+    public enum ExecutorType {
+        /** gRPC's own unbounded cached thread pool. */
+        DEFAULT,
+        /** A work-stealing pool bounded to {@code executor.threads}. */
+        FORKJOIN,
+        /** A fixed pool of {@code executor.threads} threads. */
+        FIXED,
+        /** Run handlers on the Netty event loop; only for methods that never block. */
+        DIRECT
+    }
+
+    public enum TransportType {
+        /** Native epoll when the shaded transport ships it, NIO otherwise. */
+        AUTO,
+        EPOLL,
+        NIO
+    }
+
+    private final String name;
+    private final Properties properties;
+    private final int port;
+    private final ExecutorType executorType;
+    private final int executorThreads;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final TransportType transportType;
+    private final int maxInboundMessageSize;
+    private final int flowControlWindow;
+    private final int metricsPort;
+    private final boolean traceEnabled;
+    private final long traceSlowCallMillis;
+    private final String captureFile;
+    private final int captureMaxBytes;
+    private final long shutdownHealthDelaySeconds;
+    private final long shutdownGracePeriodSeconds;
+    private final int warmUpIterations;
+    private final boolean warmUpExit;
+    private final int pipelineThreads;
+    private final int pipelineWindow;
+    private final int faultDelayPercent;
+    private final long faultDelayMillis;
+    private final int faultUnavailablePercent;
+    private final int admissionInitialLimit;
+    private final int admissionMinLimit;
+    private final int admissionMaxLimit;
+    private final Map<String, Integer> admissionShares;
+    private final CompressionPolicy compression;
+
+    private ServerConfig(String name, Properties properties, int defaultPort) {
+        this.name = name;
+        this.properties = properties;
+        this.port = getInt("port", defaultPort);
+        this.executorType = getEnum("executor", ExecutorType.class, ExecutorType.DEFAULT);
+        this.executorThreads = getInt("executor.threads", Runtime.getRuntime().availableProcessors());
+        this.bossThreads = getInt("boss.threads", 1);
+        this.workerThreads = getInt("worker.threads", 0);
+        this.transportType = getEnum("transport", TransportType.class, TransportType.AUTO);
+        this.maxInboundMessageSize = getInt("maxInboundMessageSize", 4 * 1024 * 1024);
+        this.flowControlWindow = getInt("flowControlWindow", 1024 * 1024);
+        this.metricsPort = getInt("metrics.port", 0);
+        this.traceSlowCallMillis = getLong("trace.slowCallMillis", 0, 0, Long.MAX_VALUE);
+        this.traceEnabled = Boolean.parseBoolean(
+                getString("trace.enabled", String.valueOf(metricsPort > 0 || traceSlowCallMillis > 0)).trim());
+        this.captureFile = getString("capture.file", null);
+        this.captureMaxBytes = (int) getLong("capture.maxBytes", 256 * 1024 * 1024, 1024, Integer.MAX_VALUE);
+        this.shutdownHealthDelaySeconds = getLong("shutdown.healthDelay", 0, 0, Long.MAX_VALUE);
+        this.shutdownGracePeriodSeconds = getLong("shutdown.gracePeriod", 30, 0, Long.MAX_VALUE);
+        this.warmUpIterations = (int) getLong("warmup.iterations", 0, 0, Integer.MAX_VALUE);
+        this.warmUpExit = Boolean.parseBoolean(getString("warmup.exit", "false").trim());
+        this.pipelineThreads = getInt("pipeline.threads", 0);
+        this.pipelineWindow = getInt("pipeline.window", 4 * Math.max(pipelineThreads, 1));
+        this.faultDelayPercent = (int) getLong("fault.delay.percent", 0, 0, 100);
+        this.faultDelayMillis = getLong("fault.delay.ms", 0, 0, Long.MAX_VALUE);
+        this.faultUnavailablePercent = (int) getLong("fault.unavailable.percent", 0, 0, 100 - faultDelayPercent);
+        this.admissionInitialLimit = (int) getLong("admission.limit.initial", 0, 0, Integer.MAX_VALUE);
+        this.admissionMinLimit = (int) getLong("admission.limit.min", Math.min(4, Math.max(admissionInitialLimit, 1)),
+                1, Math.max(admissionInitialLimit, 1));
+        this.admissionMaxLimit = (int) getLong("admission.limit.max", Math.max(1000, admissionInitialLimit),
+                Math.max(admissionInitialLimit, 1), Integer.MAX_VALUE);
+        this.admissionShares = getPercentages("admission.share.");
+        try {
+            this.compression = CompressionPolicy.forMethods(getStrings("compression.method."),
+                    getInt("compression.minMessageSize", 1024));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid compression settings for " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads the configuration for {@code name} from the config file and system properties.
+     */
+    public static ServerConfig load(String name, int defaultPort) throws IOException {
+        Properties properties = new Properties();
+        String file = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (file != null) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        properties.putAll(System.getProperties());
+        return new ServerConfig(name, properties, defaultPort);
+    }
+
+    /**
+     * Builds a configuration from explicit properties, ignoring files and system properties.
+     */
+    public static ServerConfig fromProperties(String name, Properties properties, int defaultPort) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return new ServerConfig(name, copy, defaultPort);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ExecutorType getExecutorType() {
+        return executorType;
+    }
+
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    public int getMaxInboundMessageSize() {
+        return maxInboundMessageSize;
+    }
+
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public boolean isTraceEnabled() {
+        return traceEnabled;
+    }
+
+    public long getTraceSlowCallMillis() {
+        return traceSlowCallMillis;
+    }
+
+    /**
+     * The traffic journal to write, or null when capture is off.
+     */
+    public String getCaptureFile() {
+        return captureFile;
+    }
+
+    public int getCaptureMaxBytes() {
+        return captureMaxBytes;
+    }
+
+    /**
+     * How long the server reports NOT_SERVING on shutdown before it refuses
+     * new calls, so health-checking load balancers stop sending it calls first.
+     */
+    public long getShutdownHealthDelaySeconds() {
+        return shutdownHealthDelaySeconds;
+    }
+
+    public long getShutdownGracePeriodSeconds() {
+        return shutdownGracePeriodSeconds;
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    /**
+     * Whether the server should stop right after its warm-up instead of serving.
+     */
+    public boolean isWarmUpExit() {
+        return warmUpExit;
+    }
+
+    public int getPipelineThreads() {
+        return pipelineThreads;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public int getFaultDelayPercent() {
+        return faultDelayPercent;
+    }
+
+    public long getFaultDelayMillis() {
+        return faultDelayMillis;
+    }
+
+    public int getFaultUnavailablePercent() {
+        return faultUnavailablePercent;
+    }
+
+    public boolean isFaultInjectionEnabled() {
+        return (faultDelayPercent > 0 && faultDelayMillis > 0) || faultUnavailablePercent > 0;
+    }
+
+    public boolean isAdmissionControlEnabled() {
+        return admissionInitialLimit > 0;
+    }
+
+    public int getAdmissionInitialLimit() {
+        return admissionInitialLimit;
+    }
+
+    public int getAdmissionMinLimit() {
+        return admissionMinLimit;
+    }
+
+    public int getAdmissionMaxLimit() {
+        return admissionMaxLimit;
+    }
+
+    /**
+     * Share of the admission limit, in percent, keyed by bare method name.
+     */
+    public Map<String, Integer> getAdmissionShares() {
+        return admissionShares;
+    }
+
+    /**
+     * Response compression per method; empty unless {@code compression.method.*} keys are set.
+     */
+    public CompressionPolicy getCompression() {
+        return compression;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{port=" + port
+                + ", executor=" + executorType + "(" + executorThreads + ")"
+                + ", boss=" + bossThreads
+                + ", worker=" + workerThreads
+                + ", transport=" + transportType
+                + ", maxInboundMessageSize=" + maxInboundMessageSize
+                + ", flowControlWindow=" + flowControlWindow
+                + ", metricsPort=" + metricsPort
+                + (traceEnabled ? ", trace" + (traceSlowCallMillis > 0 ? " slow>=" + traceSlowCallMillis + "ms" : "") : "")
+                + (captureFile != null ? ", capture=" + captureFile + "(" + captureMaxBytes + ")" : "")
+                + ", healthDelay=" + shutdownHealthDelaySeconds + "s"
+                + ", gracePeriod=" + shutdownGracePeriodSeconds + "s"
+                + (warmUpIterations > 0 ? ", warmUp=" + warmUpIterations + (warmUpExit ? " then exit" : "") : "")
+                + ", pipeline=" + pipelineThreads + "/" + pipelineWindow
+                + (isFaultInjectionEnabled()
+                        ? ", faults=" + faultDelayPercent + "% +" + faultDelayMillis + "ms, " + faultUnavailablePercent + "% unavailable"
+                        : "")
+                + (isAdmissionControlEnabled()
+                        ? ", admission=" + admissionInitialLimit + " [" + admissionMinLimit + ".." + admissionMaxLimit + "]"
+                                + (admissionShares.isEmpty() ? "" : " shares " + admissionShares)
+                        : "")
+                + (compression.isEmpty() ? "" : ", compression=" + compression)
+                + "}";
+    }
+
+    /**
+     * Reads a service-specific setting, e.g. {@code getInt("cache.add.maxEntries", 0)}
+     * reads {@code calculator.cache.add.maxEntries}.
+     */
+    public int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return getLong(key, defaultValue, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(name + "." + key, defaultValue);
+    }
+
+    private long getLong(String key, long defaultValue, long min, long max) {
+        String value = properties.getProperty(name + "." + key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < min || parsed > max) {
+                throw new NumberFormatException("out of range");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + "." + key + ": " + value, e);
+        }
+    }
+
+    private Map<String, Integer> getPercentages(String prefix) {
+        Map<String, Integer> values = new HashMap<>();
+        for (String suffix : getStrings(prefix).keySet()) {
+            values.put(suffix, (int) getLong(prefix + suffix, 100, 1, 100));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * All values whose key starts with {@code prefix}, keyed by the rest of the key.
+     */
+    private Map<String, String> getStrings(String prefix) {
+        String scoped = name + "." + prefix;
+        Map<String, String> values = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(scoped) && key.length() > scoped.length()) {
+                values.put(key.substring(scoped.length()), properties.getProperty(key));
+            }
+        }
+        return values;
+    }
+
+    private <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        String value = properties.getProperty(name + "." + key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + "." + key + ": " + value, e);
+        }
+    }
+}
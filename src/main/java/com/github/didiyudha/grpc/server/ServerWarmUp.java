@@ -0,0 +1,179 @@
+package com.github.didiyudha.grpc.server;
+
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Calls every method of the registered services before the server reports
+ * healthy, so protobuf descriptors, stubs, handler classes and the transport
+ * are loaded and initialized before the first real call instead of during
+ * it. The calls go to the server itself, over a loopback connection for a
+ * Netty server, through its interceptors and with every message serialized.
+ *
+ * Warm-up calls carry a header, and interceptors wrapped with
+ * {@link #skip(ServerInterceptor)} pass them by while the warm-up runs, so
+ * they leave no trace in the metrics or the capture journal.
+ */
+public final class ServerWarmUp {
+
+    private static final long STREAM_TIMEOUT_SECONDS = 10;
+    private static final Metadata.Key<String> WARM_UP_HEADER = Metadata.Key.of("warm-up", Metadata.ASCII_STRING_MARSHALLER);
+
+    /**
+     * Warm-up calls for one service. Calls that are expected to fail should catch their own error.
+     */
+    @FunctionalInterface
+    public interface Calls {
+        void run(Channel channel) throws Exception;
+    }
+
+    private final int iterations;
+    private final List<String> services = new ArrayList<>();
+    private final List<Calls> calls = new ArrayList<>();
+    private final List<Calls> onceCalls = new ArrayList<>();
+    // Only then are warm-up headers believed, so clients cannot hide their calls later
+    private volatile boolean running;
+
+    /**
+     * @param iterations how many times each service's calls are repeated; 0 disables the warm-up
+     */
+    public ServerWarmUp(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public void add(ServerServiceDefinition service, Calls serviceCalls) {
+        add(service, serviceCalls, null);
+    }
+
+    /**
+     * Registers {@code serviceCalls}, repeated every iteration, and
+     * {@code once}, run a single time after them for calls too slow to repeat.
+     */
+    public synchronized void add(ServerServiceDefinition service, Calls serviceCalls, Calls once) {
+        services.add(service.getServiceDescriptor().getName());
+        calls.add(serviceCalls);
+        onceCalls.add(once);
+    }
+
+    public boolean isEnabled() {
+        return iterations > 0;
+    }
+
+    /**
+     * Runs the calls on {@code channel}, a channel to the started server, and
+     * returns how long that took in milliseconds. The channel is shut down
+     * afterwards. A failing service is reported and skipped; it does not stop
+     * the server from starting.
+     */
+    public synchronized long run(ManagedChannel channel) throws InterruptedException {
+        long start = System.nanoTime();
+        Metadata headers = new Metadata();
+        headers.put(WARM_UP_HEADER, "true");
+        Channel warmUpChannel = ClientInterceptors.intercept(channel, MetadataUtils.newAttachHeadersInterceptor(headers));
+        running = true;
+        try {
+            for (int i = 0; i < services.size(); i++) {
+                try {
+                    for (int n = 0; n < iterations; n++) {
+                        calls.get(i).run(warmUpChannel);
+                    }
+                    if (onceCalls.get(i) != null) {
+                        onceCalls.get(i).run(warmUpChannel);
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    System.out.println("Warm-up of " + services.get(i) + " failed: " + e);
+                }
+            }
+        } finally {
+            running = false;
+            channel.shutdownNow();
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private boolean isWarmUp(Metadata headers) {
+        return running && headers.containsKey(WARM_UP_HEADER);
+    }
+
+    /**
+     * Returns {@code interceptor}, except that warm-up calls go straight to
+     * the next handler.
+     */
+    public ServerInterceptor skip(ServerInterceptor interceptor) {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                return isWarmUp(headers) ? next.startCall(call, headers) : interceptor.interceptCall(call, headers, next);
+            }
+        };
+    }
+
+    /**
+     * Returns {@code factory}, except that warm-up calls are not traced.
+     */
+    public ServerStreamTracer.Factory skip(ServerStreamTracer.Factory factory) {
+        return new ServerStreamTracer.Factory() {
+            @Override
+            public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+                return isWarmUp(headers) ? new ServerStreamTracer() { } : factory.newServerStreamTracer(fullMethodName, headers);
+            }
+        };
+    }
+
+    /**
+     * Sends {@code requests} on a client or bidi stream opened by {@code call},
+     * half-closes it and waits until the server has finished the call.
+     */
+    public static <ReqT, RespT> void stream(Function<StreamObserver<RespT>, StreamObserver<ReqT>> call,
+                                            Iterable<ReqT> requests) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        StreamObserver<ReqT> requestObserver = call.apply(new StreamObserver<RespT>() {
+            @Override
+            public void onNext(RespT value) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                error.set(t);
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        for (ReqT request : requests) {
+            requestObserver.onNext(request);
+        }
+        requestObserver.onCompleted();
+        if (!done.await(STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw Status.DEADLINE_EXCEEDED.withDescription("Warm-up stream did not finish").asRuntimeException();
+        }
+        if (error.get() != null) {
+            throw Status.fromThrowable(error.get()).asRuntimeException();
+        }
+    }
+}
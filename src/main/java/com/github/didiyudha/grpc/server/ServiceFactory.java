@@ -0,0 +1,16 @@
+package com.github.didiyudha.grpc.server;
+
+import io.grpc.ServerServiceDefinition;
+
+/**
+ * Creates one service for a server process, on the executor, pipeline and
+ * metrics of the bootstrap it is hosted by.
+ */
+@FunctionalInterface
+public interface ServiceFactory {
+
+    /**
+     * @param config the service's own settings, e.g. {@code calculator.cache.*}, which may differ from the host's
+     */
+    ServerServiceDefinition create(ServerBootstrap bootstrap, ServerConfig config);
+}
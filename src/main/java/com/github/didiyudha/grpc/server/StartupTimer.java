@@ -0,0 +1,73 @@
+package com.github.didiyudha.grpc.server;
+
+import com.github.didiyudha.grpc.metrics.MetricsRegistry;
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.health.v1.HealthGrpc;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how quickly a fresh process becomes useful: the time from JVM
+ * start until the server reports SERVING, until the first call arrives, and
+ * how long that first call takes. Health checks are not counted as the first
+ * call. The results are printed and exported as gauges, in milliseconds and
+ * microseconds, and stay -1 until measured.
+ */
+public final class StartupTimer implements ServerInterceptor {
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicBoolean firstCallSeen = new AtomicBoolean();
+
+    private volatile long servingMillis = -1;
+    private volatile long warmUpMillis = -1;
+    private volatile long firstCallMillis = -1;
+    private volatile long firstCallMicros = -1;
+
+    public StartupTimer(MetricsRegistry registry) {
+        registry.registerGauge("grpc_server_startup_serving_milliseconds", "", () -> servingMillis);
+        registry.registerGauge("grpc_server_startup_warmup_milliseconds", "", () -> warmUpMillis);
+        registry.registerGauge("grpc_server_startup_first_call_milliseconds", "", () -> firstCallMillis);
+        registry.registerGauge("grpc_server_startup_first_call_latency_microseconds", "", () -> firstCallMicros);
+    }
+
+    /**
+     * Records that the server now reports SERVING, after a warm-up of {@code warmUpMillis}.
+     */
+    public void serving(long warmUpMillis) {
+        this.warmUpMillis = warmUpMillis;
+        this.servingMillis = System.currentTimeMillis() - jvmStartMillis;
+        System.out.println("Serving " + servingMillis + " ms after JVM start (warm-up " + warmUpMillis + " ms)");
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (firstCallSeen.get()
+                || HealthGrpc.SERVICE_NAME.equals(MethodDescriptor.extractFullServiceName(
+                        call.getMethodDescriptor().getFullMethodName()))
+                || !firstCallSeen.compareAndSet(false, true)) {
+            return next.startCall(call, headers);
+        }
+
+        long startNanos = System.nanoTime();
+        firstCallMillis = System.currentTimeMillis() - jvmStartMillis;
+        String method = call.getMethodDescriptor().getFullMethodName();
+        return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                firstCallMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+                System.out.println("First call " + method + " arrived " + firstCallMillis
+                        + " ms after JVM start and took " + firstCallMicros + " us");
+                super.close(status, trailers);
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimeFactorizerTest {
+
+    private static final BigInteger TWO_TO_THE_64 = BigInteger.ONE.shiftLeft(64);
+
+    @Test
+    public void zeroOneAndTwo() {
+        assertArrayEquals(new long[0], PrimeFactorizer.factor(0));
+        assertArrayEquals(new long[0], PrimeFactorizer.factor(1));
+        assertArrayEquals(new long[]{2}, PrimeFactorizer.factor(2));
+        assertFalse(PrimeFactorizer.isPrime(0));
+        assertFalse(PrimeFactorizer.isPrime(1));
+        assertTrue(PrimeFactorizer.isPrime(2));
+    }
+
+    @Test
+    public void carmichaelNumbers() {
+        assertFactors(561, 3, 11, 17);
+        assertFactors(1105, 5, 13, 17);
+        assertFactors(1729, 7, 13, 19);
+        assertFactors(8911, 7, 19, 67);
+        assertFactors(3215031751L, 151, 751, 28351);
+        // A strong pseudoprime to every prime base up to 23
+        assertFactors(3825123056546413051L, 149491, 747451, 34233211);
+    }
+
+    @Test
+    public void productsOfTwoPrimesNearTwoToThe32() {
+        long below = 4294967291L;
+        long justBelow = 4294967279L;
+        long above = 4294967311L;
+        assertFactors(below * below, below, below);
+        assertFactors(below * justBelow, justBelow, below);
+        assertFactors(65521 * above, 65521, above);
+        assertFactors(2147483647L * 4294967291L, 2147483647L, 4294967291L);
+    }
+
+    @Test
+    public void valuesAtLeastTwoToThe63() {
+        assertFactors(Long.MIN_VALUE, repeat(2, 63));
+        // 2^64 - 1
+        assertFactors(-1L, 3, 5, 17, 257, 641, 65537, 6700417);
+        // 2^64 - 59, the largest 64-bit prime
+        assertFactors(-59L, -59L);
+        assertTrue(PrimeFactorizer.isPrime(-59L));
+        assertFalse(PrimeFactorizer.isPrime(-1L));
+        assertFalse(PrimeFactorizer.isPrime(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void factorsMultiplyBackToRandomValues() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            long n = i % 2 == 0
+                    ? random.nextLong() >>> random.nextInt(64)
+                    : BigInteger.probablePrime(2 + random.nextInt(31), random)
+                    .multiply(BigInteger.probablePrime(2 + random.nextInt(31), random)).longValue();
+            assertValidFactorization(n, PrimeFactorizer.factor(n));
+        }
+    }
+
+    private static void assertFactors(long n, long... expected) {
+        long[] factors = PrimeFactorizer.factor(n);
+        assertArrayEquals(Long.toUnsignedString(n), expected, factors);
+        assertValidFactorization(n, factors);
+    }
+
+    private static void assertValidFactorization(long n, long[] factors) {
+        String value = Long.toUnsignedString(n);
+        BigInteger product = BigInteger.ONE;
+        for (int i = 0; i < factors.length; i++) {
+            BigInteger factor = unsigned(factors[i]);
+            assertTrue(value + ": " + factor + " is not prime", factor.isProbablePrime(50));
+            assertTrue(value + ": " + factor + " is not prime", PrimeFactorizer.isPrime(factors[i]));
+            if (i > 0) {
+                assertTrue(value + ": factors out of order", Long.compareUnsigned(factors[i - 1], factors[i]) <= 0);
+            }
+            product = product.multiply(factor);
+        }
+        assertEquals(value, unsigned(n), n == 0 ? BigInteger.ZERO : product);
+    }
+
+    private static BigInteger unsigned(long n) {
+        BigInteger value = BigInteger.valueOf(n);
+        return n < 0 ? value.add(TWO_TO_THE_64) : value;
+    }
+
+    private static long[] repeat(long value, int times) {
+        long[] values = new long[times];
+        for (int i = 0; i < times; i++) {
+            values[i] = value;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.didiyudha.grpc.calculator.server;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the error bound the sketch documents: an estimated quantile's rank
+ * is within 1.5 / k of the count 99% of the time, over 300 runs of a million
+ * values each. Compactions use their own random offsets, so the percentile is
+ * taken over the estimates of all runs; it comes out near 1.4 / k for a single
+ * sketch and lower for merged ones.
+ */
+public class QuantileSketchTest {
+
+    private static final int K = 200;
+    private static final int VALUES = 1_000_000;
+    private static final int RUNS = 300;
+    private static final double BOUND = 1.5 / K;
+
+    private static final double[] QUANTILES = new double[99];
+
+    static {
+        for (int i = 0; i < QUANTILES.length; i++) {
+            QUANTILES[i] = (i + 1) / 100.0;
+        }
+    }
+
+    @Test
+    public void rankErrorIsWithinTheBound() {
+        Random random = new Random(1);
+        double[] errors = new double[RUNS * QUANTILES.length];
+        for (int run = 0; run < RUNS; run++) {
+            QuantileSketch sketch = new QuantileSketch(K);
+            for (int value : shuffled(VALUES, random)) {
+                sketch.add(value);
+            }
+            rankErrors(sketch, VALUES, errors, run * QUANTILES.length);
+        }
+        assertWithinBound(errors);
+    }
+
+    @Test
+    public void mergedSketchesKeepTheBound() {
+        Random random = new Random(2);
+        int parts = 8;
+        double[] errors = new double[RUNS * QUANTILES.length];
+        for (int run = 0; run < RUNS; run++) {
+            QuantileSketch[] sketches = new QuantileSketch[parts];
+            for (int p = 0; p < parts; p++) {
+                sketches[p] = new QuantileSketch(K);
+            }
+            // Uneven parts, each a random subset of the values
+            for (int value : shuffled(VALUES, random)) {
+                sketches[Math.min(random.nextInt(parts + 2), parts - 1)].add(value);
+            }
+            QuantileSketch merged = new QuantileSketch(K);
+            for (QuantileSketch sketch : sketches) {
+                merged.merge(sketch);
+            }
+            assertEquals(VALUES, merged.getCount());
+            rankErrors(merged, VALUES, errors, run * QUANTILES.length);
+        }
+        assertWithinBound(errors);
+    }
+
+    @Test
+    public void extremesAreExact() {
+        QuantileSketch sketch = new QuantileSketch(K);
+        QuantileSketch other = new QuantileSketch(K);
+        for (int value : shuffled(VALUES / 10, new Random(3))) {
+            (value % 2 == 0 ? sketch : other).add(value - 5);
+        }
+        sketch.merge(other);
+        sketch.merge(new QuantileSketch(K));
+        long[] values = new long[2];
+        sketch.quantiles(new double[]{0, 1}, values);
+        assertEquals(-5, values[0]);
+        assertEquals(VALUES / 10 - 6, values[1]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptySketchHasNoQuantiles() {
+        new QuantileSketch(K).quantiles(new double[]{0.5}, new long[1]);
+    }
+
+    // The values 0 to n - 1 in random order, so the rank of a value is the value plus one
+    private static int[] shuffled(int n, Random random) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    private static void rankErrors(QuantileSketch sketch, int n, double[] errors, int offset) {
+        long[] values = new long[QUANTILES.length];
+        sketch.quantiles(QUANTILES, values);
+        for (int q = 0; q < QUANTILES.length; q++) {
+            errors[offset + q] = Math.abs((values[q] + 1) / (double) n - QUANTILES[q]);
+        }
+    }
+
+    private static void assertWithinBound(double[] errors) {
+        Arrays.sort(errors);
+        double p99 = errors[(int) (errors.length * 0.99)];
+        assertTrue("99th percentile rank error " + p99 + " exceeds " + BOUND, p99 <= BOUND);
+    }
+}
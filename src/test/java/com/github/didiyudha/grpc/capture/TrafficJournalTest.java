@@ -0,0 +1,207 @@
+package com.github.didiyudha.grpc.capture;
+
+import com.proto.greet.GreetRequest;
+import com.proto.greet.GreetServiceGrpc;
+import com.proto.greet.Greeting;
+import com.proto.greet.LongGreetRequest;
+import io.grpc.MethodDescriptor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes journals from several threads and reads them back with the
+ * {@link JournalReader}.
+ */
+public class TrafficJournalTest {
+
+    private static final int THREADS = 4;
+    private static final int CALLS_PER_THREAD = 2_000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatSeveralThreadsWrote() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (TrafficJournal journal = TrafficJournal.create(path, 16 * 1024 * 1024)) {
+            writeConcurrently(journal);
+        }
+
+        Map<Long, List<JournalReader.Event>> events = new HashMap<>();
+        Map<Long, String> names = new HashMap<>();
+        try (JournalReader reader = JournalReader.open(path)) {
+            JournalReader.Event event;
+            while ((event = reader.next()) != null) {
+                // The METHOD record was read before the first event using its id
+                assertNotNull("Method " + reader.getMethodId() + " used before its record", reader.getFullMethodName());
+                events.computeIfAbsent(reader.getCallId(), id -> new ArrayList<>()).add(event);
+                if (event == JournalReader.Event.MESSAGE) {
+                    names.put(reader.getCallId(), firstName(reader));
+                }
+            }
+        }
+
+        assertEquals(THREADS * CALLS_PER_THREAD, events.size());
+        for (Map.Entry<Long, List<JournalReader.Event>> call : events.entrySet()) {
+            List<JournalReader.Event> callEvents = call.getValue();
+            assertEquals("Call " + call.getKey(), JournalReader.Event.MESSAGE, callEvents.get(0));
+            assertEquals("Call " + call.getKey(), JournalReader.Event.HALF_CLOSE, callEvents.get(callEvents.size() - 1));
+        }
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                assertTrue(names.containsValue(thread + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void stopsAtATornZeroLengthTail() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (TrafficJournal journal = TrafficJournal.create(path, 1024 * 1024)) {
+            writeCalls(journal, 0, 10);
+        }
+        int complete = countEvents(path);
+
+        // A record reserved but never given its length, then one after it that was committed
+        ByteBuffer tail = ByteBuffer.allocate(2 * (4 + TrafficJournal.EVENT_BYTES)).order(ByteOrder.BIG_ENDIAN);
+        tail.putInt(0).put(TrafficJournal.HALF_CLOSE).putInt(0).putLong(10).putLong(1);
+        tail.putInt(TrafficJournal.EVENT_BYTES).put(TrafficJournal.HALF_CLOSE).putInt(0).putLong(11).putLong(2);
+        tail.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            channel.write(tail);
+        }
+
+        assertEquals(complete, countEvents(path));
+    }
+
+    @Test
+    public void stopsAtTheZeroTailOfAJournalThatWasNotClosed() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        TrafficJournal journal = TrafficJournal.create(path, 1024 * 1024);
+        try {
+            writeCalls(journal, 0, 10);
+            // The file still has the journal's full capacity, zeros past the records
+            assertEquals(1024 * 1024, Files.size(path));
+            // Five unary calls of two events and five streams of three
+            assertEquals(25, countEvents(path));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void fullJournalIsTruncatedAtTheFirstDroppedRecord() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        int capacity = 64 * 1024;
+        try (TrafficJournal journal = TrafficJournal.create(path, capacity)) {
+            writeConcurrently(journal);
+        }
+
+        long size = Files.size(path);
+        assertTrue("Journal of " + size + " bytes is larger than its capacity", size <= capacity);
+
+        // Records are contiguous up to the end of the file, with no reserved but dropped space
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int position = TrafficJournal.HEADER_BYTES;
+            while (position < size) {
+                int length = buffer.getInt(position);
+                assertTrue("Empty record at " + position, length > 0);
+                position += 4 + length;
+                records++;
+            }
+            assertEquals(size, position);
+        }
+
+        int methods = 2;
+        int events = countEvents(path);
+        assertEquals(records - methods, events);
+        assertTrue("Nothing was dropped", events < 2 * THREADS * CALLS_PER_THREAD);
+    }
+
+    private static void writeConcurrently(TrafficJournal journal) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                writeCalls(journal, thread, CALLS_PER_THREAD);
+            });
+            writer.start();
+            threads.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : threads) {
+            writer.join();
+        }
+    }
+
+    // Even calls are unary Greet calls, odd ones LongGreet streams of two messages
+    private static void writeCalls(TrafficJournal journal, int thread, int calls) {
+        for (int i = 0; i < calls; i++) {
+            long callId = journal.nextCallId();
+            Greeting greeting = Greeting.newBuilder().setFirstName(thread + "-" + i).build();
+            if (i % 2 == 0) {
+                int methodId = journal.methodId(GreetServiceGrpc.getGreetMethod());
+                journal.message(methodId, callId, GreetRequest.newBuilder().setGreeting(greeting).build());
+                journal.halfClose(methodId, callId);
+            } else {
+                MethodDescriptor<LongGreetRequest, ?> method = GreetServiceGrpc.getLongGreetMethod();
+                int methodId = journal.methodId(method);
+                journal.message(methodId, callId, LongGreetRequest.newBuilder().setGreeting(greeting).build());
+                journal.message(methodId, callId, LongGreetRequest.newBuilder().setGreeting(greeting).build());
+                journal.halfClose(methodId, callId);
+            }
+        }
+    }
+
+    private static String firstName(JournalReader reader) throws IOException {
+        // Copied, as protobuf's decoder for direct buffers relies on JDK internals
+        ByteBuffer payload = reader.getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        if (reader.getFullMethodName().equals(GreetServiceGrpc.getGreetMethod().getFullMethodName())) {
+            assertEquals(MethodDescriptor.MethodType.UNARY, reader.getMethodType());
+            return GreetRequest.parseFrom(bytes).getGreeting().getFirstName();
+        }
+        assertEquals(MethodDescriptor.MethodType.CLIENT_STREAMING, reader.getMethodType());
+        return LongGreetRequest.parseFrom(bytes).getGreeting().getFirstName();
+    }
+
+    private static int countEvents(Path path) throws IOException {
+        int events = 0;
+        try (JournalReader reader = JournalReader.open(path)) {
+            while (reader.next() != null) {
+                events++;
+            }
+            assertNull(reader.next());
+        }
+        return events;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.didiyudha.grpc.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelPoolTest {
+
+    private static final int CONNECTIONS = 2;
+    private static final int REFRESHES = 200;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void retiredChannelsStayBoundedAcrossRefreshes() throws Exception {
+        Path targets = folder.newFile("targets").toPath();
+        write(targets, "localhost:50001");
+        ChannelPool pool = ChannelPool.newBuilder("file:" + targets)
+                .connectionsPerTarget(CONNECTIONS)
+                .refreshInterval(5, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            int maxRetired = 0;
+            for (int i = 1; i <= REFRESHES; i++) {
+                String target = i % 2 == 0 ? "localhost:50001" : "localhost:50002";
+                write(targets, "# flipped " + i + " times\n" + target + "\n");
+                awaitAuthority(pool, target);
+                assertEquals(CONNECTIONS, pool.size());
+                maxRetired = Math.max(maxRetired, pool.retiredCount());
+            }
+            // Each refresh retires one target's connections and forgets those that terminated since
+            assertTrue("Up to " + maxRetired + " retired channels", maxRetired <= 2 * CONNECTIONS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+        // Renamed into place so a refresh never reads a half-written file
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void awaitAuthority(ChannelPool pool, String authority) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!pool.authority().equals(authority)) {
+            assertTrue("No refresh to " + authority, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.didiyudha.grpc.greeting.server;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.proto.greet.GreetResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncodedGreetingTest {
+
+    @Test
+    public void roundTripsThroughTheMarshaller() throws Exception {
+        EncodedGreeting greeting = new EncodedGreeting(ByteString.copyFromUtf8("Hello "), ByteString.copyFromUtf8("D\u00eddi"));
+        byte[] bytes = ByteStreams.toByteArray(EncodedGreeting.MARSHALLER.stream(greeting));
+
+        assertEquals("Hello D\u00eddi", GreetResponse.parseFrom(bytes).getResult());
+        EncodedGreeting parsed = EncodedGreeting.MARSHALLER.parse(new ByteArrayInputStream(bytes));
+        assertArrayEquals(bytes, parsed.toByteArray());
+    }
+
+    @Test
+    public void parsesWhatTheGeneratedResponseWrites() throws Exception {
+        byte[] empty = GreetResponse.getDefaultInstance().toByteArray();
+        assertEquals(0, empty.length);
+        assertEquals("", GreetResponse.parseFrom(
+                EncodedGreeting.MARSHALLER.parse(new ByteArrayInputStream(empty)).toByteArray()).getResult());
+
+        byte[] bytes = GreetResponse.newBuilder().setResult("Hello Didi").build().toByteArray();
+        assertArrayEquals(bytes, EncodedGreeting.MARSHALLER.parse(new ByteArrayInputStream(bytes)).toByteArray());
+    }
+}